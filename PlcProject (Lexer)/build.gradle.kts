@@ -1,5 +1,6 @@
 plugins {
     id("java")
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "plc.project"
@@ -22,4 +23,12 @@ java {
 
 tasks.test {
     useJUnitPlatform()
+    jvmArgs("--add-modules=jdk.incubator.vector")
+}
+
+// The lexer's vectorized RunScanner uses the incubating Vector API, falling
+// back to a scalar loop when the module isn't added at runtime. Only the main
+// source set references it, and the incubating warning is expected.
+tasks.compileJava {
+    options.compilerArgs.addAll(listOf("--add-modules=jdk.incubator.vector", "-Xlint:-incubating"))
 }
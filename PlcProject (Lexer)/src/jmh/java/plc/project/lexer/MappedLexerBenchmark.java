@@ -0,0 +1,74 @@
+package plc.project.lexer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares lexing a generated source file via {@link Lexer#map(Path)} against
+ * reading it with {@link Files#readString(Path)} first. Run with
+ * {@code ./gradlew jmh}; adding {@code -prof gc} also reports the allocation
+ * rate, which is where the mapped path mostly differs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class MappedLexerBenchmark {
+
+    @Param({"16", "128"})
+    public int megabytes;
+
+    private Path path;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        path = Files.createTempFile("lexer-benchmark", ".plc");
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            long size = 0;
+            for (int i = 0; size < megabytes * 1024L * 1024L; i++) {
+                var line = "DEF function" + i + "(first, second) DO\n" +
+                    "    LET value = first * 2.5 + second.method(\"string " + i + "\", 'c');\n" +
+                    "    // comment describing function " + i + "\n" +
+                    "    RETURN value;\n" +
+                    "END\n";
+                writer.write(line);
+                size += line.length();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    public int readString() throws IOException, LexException {
+        return new Lexer(Files.readString(path)).lex().size();
+    }
+
+    @Benchmark
+    public int mapped() throws IOException, LexException {
+        return Lexer.map(path).lex().size();
+    }
+
+}
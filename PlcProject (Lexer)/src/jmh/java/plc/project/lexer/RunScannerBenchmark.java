@@ -0,0 +1,62 @@
+package plc.project.lexer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar and vectorized {@link RunScanner}s by lexing generated
+ * sources dominated by comments or string literals. Each parameter
+ * combination runs in its own fork, so {@code plc.lexer.vector} is set before
+ * the lexer first selects a scanner. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx2g", "--add-modules=jdk.incubator.vector"})
+public class RunScannerBenchmark {
+
+    @Param({"true", "false"})
+    public String vector;
+
+    @Param({"comments", "strings"})
+    public String corpus;
+
+    private String input;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        System.setProperty("plc.lexer.vector", vector);
+        var builder = new StringBuilder();
+        for (int i = 0; builder.length() < 16 * 1024 * 1024; i++) {
+            switch (corpus) {
+                case "comments" -> builder.append("    // comment ").append(i)
+                    .append(" explaining the statement below in some detail\n")
+                    .append("    LET x = ").append(i).append(";\n");
+                case "strings" -> builder.append("    print(\"message ").append(i)
+                    .append(" with a reasonably long body and one \\t escape\");\n");
+                default -> throw new IllegalArgumentException(corpus);
+            }
+        }
+        input = builder.toString();
+    }
+
+    @Benchmark
+    public int lex() throws LexException {
+        return new Lexer(input).lex().size();
+    }
+
+}
@@ -0,0 +1,88 @@
+package plc.project.parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading a generated program from the {@link AstWriter} format,
+ * eagerly with {@link AstReader#read(byte[])} and lazily with
+ * {@link AstReader#map(Path)}, against lexing and parsing its source. Run
+ * with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class AstReaderBenchmark {
+
+    @Param({"16"})
+    public int megabytes;
+
+    private Path source;
+    private Path binary;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, LexException, ParseException {
+        var builder = new StringBuilder();
+        for (int i = 0; builder.length() < megabytes * 1024L * 1024L; i++) {
+            builder.append("DEF function").append(i).append("(first, second) DO\n")
+                .append("    LET value = first * 2.5 + second.method(\"string ").append(i).append("\", 'c');\n")
+                .append("    RETURN value;\n")
+                .append("END\n");
+        }
+        source = Files.createTempFile("parser-benchmark", ".plc");
+        Files.writeString(source, builder);
+        binary = Files.createTempFile("parser-benchmark", ".ast");
+        AstWriter.write((Ast.Source) new Parser(Lexer.map(source).lexBuffer()).parse("source"), binary);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(binary);
+    }
+
+    @Benchmark
+    public int parse() throws IOException, LexException, ParseException {
+        return ((Ast.Source) new Parser(Lexer.map(source).lexBuffer()).parse("source")).statements().size();
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        return AstReader.read(Files.readAllBytes(binary)).statements().size();
+    }
+
+    /**
+     * Maps the file and decodes every top-level statement, which leaves only
+     * the nested statement lists undecoded.
+     */
+    @Benchmark
+    public int mapped() throws IOException {
+        int size = 0;
+        for (var stmt : AstReader.map(binary).statements()) {
+            size += stmt instanceof Ast.Stmt.Def def ? def.body().size() : 1;
+        }
+        return size;
+    }
+
+}
@@ -2,13 +2,16 @@ package plc.project;
 
 import plc.project.lexer.LexException;
 import plc.project.lexer.Lexer;
+import plc.project.parser.Ast;
+import plc.project.parser.AstPrinter;
+import plc.project.parser.ParseCache;
 import plc.project.parser.ParseException;
 import plc.project.parser.Parser;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.Scanner;
-import java.util.function.Function;
-import java.util.regex.MatchResult;
-import java.util.regex.Pattern;
 
 /**
  * Provides an entry point to a REPL (Read-Eval-Print-Loop) for each part of our
@@ -48,7 +51,22 @@ public final class Main {
     private static void parser(String input) throws LexException, ParseException {
         var tokens = new Lexer(input).lex();
         var ast = new Parser(tokens).parse("source"); //edit for manual testing
-        System.out.println(prettify(ast.toString()));
+        prettyPrint(ast);
+    }
+
+    private static ParseCache cache; //created by the first cachedParser call
+
+    private static void cachedParser(String input) throws LexException, ParseException {
+        if (cache == null) {
+            try {
+                cache = new ParseCache(Path.of(System.getProperty("user.home"), ".cache", "plc"), 64 << 20);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        var ast = cache.parse(input);
+        prettyPrint(ast);
+        System.out.println("(cache: " + cache.hits() + " hits, " + cache.misses() + " misses)");
     }
 
     private static final Scanner SCANNER = new Scanner(System.in);
@@ -68,35 +86,13 @@ public final class Main {
         return builder.toString();
     }
 
-    private static final Pattern RECORD_FORMAT = Pattern.compile(
-        "(?<open>)(?<=^|\\[|, |=)[A-Za-z]*\\[(?<inline>(?=[^\\[]*?]))?" +
-            "|(?<value>), (?=[A-Za-z]+(\\[|=))" +
-            "|(?<close>)](?=,|]|$)"
-    );
-
-    private static String prettify(String record) {
-        //This is not how you're supposed to use regex, but... it works?
-        return RECORD_FORMAT.matcher(record).replaceAll(new Function<>() {
-            private String indent = "";
-            private boolean inline = false;
-            @Override
-            public String apply(MatchResult m) {
-                if (inline || m.group("inline") != null) {
-                    inline = m.group("close") == null;
-                    return m.group();
-                } else if (m.group("open") != null) {
-                    indent = indent + "    ";
-                    return m.group() + "\n" + indent;
-                } else if (m.group("value") != null) {
-                    return ",\n" + indent + m.group().replaceFirst(", ", "");
-                } else if (m.group("close") != null) {
-                    indent = indent.replaceFirst("    ", "");
-                    return "\n" + indent + m.group();
-                } else {
-                    throw new AssertionError(m.group());
-                }
-            }
-        });
+    private static void prettyPrint(Ast ast) {
+        try {
+            AstPrinter.print(ast, System.out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.println();
     }
 
 }
@@ -0,0 +1,89 @@
+package plc.project.lexer;
+
+/**
+ * A precomputed set of characters, used by the lexer in place of regex
+ * patterns that match a single character. Membership for ASCII characters is
+ * stored in two 64-bit masks, so {@link #contains(char)} is a shift and a mask
+ * without any allocation. Characters outside of ASCII are only ever members
+ * through an explicit list, which is optionally inverted to support negated
+ * classes such as {@code [^\n\r]}.
+ */
+final class CharClass {
+
+    private final long low;
+    private final long high;
+    private final String other;
+    private final boolean inverted;
+
+    private CharClass(long low, long high, String other, boolean inverted) {
+        this.low = low;
+        this.high = high;
+        this.other = other;
+        this.inverted = inverted;
+    }
+
+    /**
+     * Returns a class containing exactly the given characters.
+     */
+    public static CharClass of(String members) {
+        long low = 0;
+        long high = 0;
+        var other = new StringBuilder();
+        for (int i = 0; i < members.length(); i++) {
+            var c = members.charAt(i);
+            if (c < 64) {
+                low |= 1L << c;
+            } else if (c < 128) {
+                high |= 1L << (c - 64);
+            } else if (other.indexOf(String.valueOf(c)) < 0) {
+                other.append(c);
+            }
+        }
+        return new CharClass(low, high, other.toString(), false);
+    }
+
+    /**
+     * Returns a class containing all characters from start to end (inclusive),
+     * both of which must be ASCII.
+     */
+    public static CharClass range(char start, char end) {
+        if (start > end || end >= 128) {
+            throw new IllegalArgumentException("Invalid ASCII range " + start + "-" + end + ".");
+        }
+        var members = new StringBuilder();
+        for (char c = start; c <= end; c++) {
+            members.append(c);
+        }
+        return of(members.toString());
+    }
+
+    /**
+     * Returns a class containing characters in either this class or other.
+     * Only ASCII classes may be combined this way, since the explicit lists of
+     * non-ASCII characters are not merged.
+     */
+    public CharClass or(CharClass other) {
+        if (!this.other.isEmpty() || !other.other.isEmpty() || inverted || other.inverted) {
+            throw new IllegalArgumentException("Only ASCII classes may be combined.");
+        }
+        return new CharClass(low | other.low, high | other.high, "", false);
+    }
+
+    /**
+     * Returns a class containing every character not in this class.
+     */
+    public CharClass negate() {
+        return new CharClass(~low, ~high, other, !inverted);
+    }
+
+    public boolean contains(char c) {
+        if (c < 64) {
+            return (low & 1L << c) != 0;
+        } else if (c < 128) {
+            return (high & 1L << (c - 64)) != 0;
+        } else {
+            return (other.indexOf(c) >= 0) != inverted;
+        }
+    }
+
+}
@@ -0,0 +1,11 @@
+package plc.project.lexer;
+
+/**
+ * An error recorded while lexing or parsing in recovery mode, which continues
+ * past errors instead of throwing a {@link LexException} or
+ * {@code ParseException} at the first one. A diagnostic is only the message
+ * and the offset in the input (the {@link LexException} index, or the start
+ * of the parser's next token), without a stack trace or the token's text, so
+ * that reporting every error in a file costs about as much as lexing it.
+ */
+public record Diagnostic(String message, int offset) {}
@@ -1,7 +1,22 @@
 package plc.project.lexer;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * The lexer works through a combination of {@link #lex()}, which repeatedly
@@ -13,199 +28,657 @@ import java.util.List;
  * Additionally, {@link CharStream} manages the lexer state and contains
  * {@link CharStream#peek} and {@link CharStream#match}. These are helpful
  * utilities for working with character state and building tokens.
+ *
+ * <p>
+ * Input is read through a bounded window, so a lexer created from a
+ * {@link Reader} or {@link ReadableByteChannel} can hand out tokens on demand
+ * via {@link #tokens()} without ever holding the whole program in memory.
+ * Long runs of whitespace, comment bodies, and string bodies are skipped by a
+ * {@link RunScanner}, which uses SIMD comparisons when the Vector API is
+ * available.
  */
 public final class Lexer {
 
+    static final CharClass WHITESPACE = CharClass.of(" \b\n\r\t");
+    static final CharClass NEWLINE = CharClass.of("\n\r");
+    static final CharClass LETTER = CharClass.range('A', 'Z').or(CharClass.range('a', 'z'));
+    static final CharClass DIGIT = CharClass.range('0', '9');
+    static final CharClass IDENTIFIER_START = LETTER.or(CharClass.of("_"));
+    static final CharClass IDENTIFIER_PART = IDENTIFIER_START.or(DIGIT).or(CharClass.of("-"));
+    static final CharClass SIGN = CharClass.of("+-");
+    static final CharClass EXPONENT = CharClass.of("eE");
+    static final CharClass DOT = CharClass.of(".");
+    static final CharClass SLASH = CharClass.of("/");
+    static final CharClass BACKSLASH = CharClass.of("\\");
+    static final CharClass SINGLE_QUOTE = CharClass.of("'");
+    static final CharClass DOUBLE_QUOTE = CharClass.of("\"");
+    static final CharClass CHARACTER_BODY = CharClass.of("'\n\r").negate();
+    static final CharClass ESCAPE = CharClass.of("bnrt'\"\\");
+    static final CharClass COMPARISON = CharClass.of("<>!=");
+    static final CharClass EQUALS = CharClass.of("=");
+    //Equivalent to the regex '.', which excludes all line terminators
+    static final CharClass ANY = CharClass.of("\n\r\u0085\u2028\u2029").negate();
+
+    //Inputs are split into chunks of about this many characters (at the next
+    //line break) for parallel lexing.
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    //The most characters past the end of a token the lexer may inspect when
+    //deciding where it ends, e.g. "e+" in "1e+" (which is "1" if no digit).
+    private static final int LOOKAHEAD = 2;
+
     private final CharStream chars;
+    private final CharSequence source; //retained for SourceTokens, if available
+    private final SymbolTable symbols;
+    private final LineIndex lines = new LineIndex();
+    private List<Diagnostic> diagnostics; //null unless recovering
+    private boolean invalid = false; //whether the current token has an error
+
+    public Lexer(CharSequence input) {
+        this(Reader.of(input), input);
+    }
+
+    public Lexer(Reader input) {
+        this(input, null);
+    }
+
+    private Lexer(Reader input, CharSequence source) {
+        this(input, source, new SymbolTable(), 0);
+    }
+
+    /**
+     * Creates a lexer starting at the given index in the input, where the
+     * reader begins with the character at that index.
+     */
+    private Lexer(Reader input, CharSequence source, SymbolTable symbols, int start) {
+        this.chars = new CharStream(input, start);
+        this.source = source;
+        this.symbols = symbols;
+    }
 
-    public Lexer(String input) {
-        chars = new CharStream(input);
+    /**
+     * Creates a lexer decoding UTF-8 from the given channel. The channel is
+     * read lazily as tokens are requested, but is not closed by the lexer.
+     */
+    public Lexer(ReadableByteChannel input) {
+        this(Channels.newReader(input, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a lexer over the file at the given path, which is memory-mapped
+     * instead of being read into a String. Only the characters of each token
+     * are copied out of the mapped file, as that token is lexed.
+     *
+     * @see MappedSource
+     */
+    public static Lexer map(Path path) throws IOException {
+        var source = MappedSource.map(path);
+        return new Lexer(source instanceof MappedSource mapped ? mapped.reader() : Reader.of(source), source);
     }
 
     public List<Token> lex() throws LexException {
         List<Token> tokens = new ArrayList<>();
+        for (var type = lexNext(); type != null; type = lexNext()) {
+            tokens.add(emit(type));
+        }
+        return tokens;
+    }
+
+    /**
+     * Equivalent to {@code new Lexer(input).lex()}, but lexes chunks of the
+     * input in parallel on the given pool and concatenates their tokens. If
+     * any chunk fails, the exception from the earliest chunk is thrown, which
+     * is the same one the sequential lexer would throw.
+     *
+     * <p>
+     * Chunks are split after a line break ({@code \n}). No token or comment
+     * can contain a line break (string and character literals can't span
+     * lines), and a token's lookahead stops at the first character that
+     * doesn't match, so every line starts outside of any token and can be
+     * lexed independently. The pre-scan for chunk boundaries is therefore
+     * just a search for the next line break.
+     */
+    public static List<Token> lexParallel(CharSequence input, ForkJoinPool pool) throws LexException {
+        return lexParallel(input, pool, CHUNK_SIZE);
+    }
+
+    static List<Token> lexParallel(CharSequence input, ForkJoinPool pool, int chunkSize) throws LexException {
+        var chunks = new ArrayList<Chunk>();
+        for (int start = 0, end; start < input.length(); start = end) {
+            end = Math.min(start + chunkSize, input.length());
+            while (end < input.length() && input.charAt(end - 1) != '\n') {
+                end++;
+            }
+            chunks.add(new Chunk(input, start, end));
+        }
+        chunks.forEach(pool::execute);
+        var tokens = new ArrayList<Token>();
+        for (var chunk : chunks) {
+            var result = chunk.join();
+            if (chunk.error != null) {
+                chunks.forEach(c -> c.cancel(false));
+                throw chunk.error;
+            }
+            tokens.addAll(result);
+        }
+        return tokens;
+    }
+
+    /**
+     * Equivalent to {@link #lex()}, but returns {@link SourceToken}s which
+     * reference the input by offset and only build their literal on demand.
+     * This requires the lexer to be created from a {@link CharSequence} (or
+     * {@link #map(Path)}), as a {@link Reader} is not retained.
+     */
+    public List<SourceToken> lexSource() throws LexException {
+        Preconditions.checkState(source != null, "Lexer input is a Reader, not a CharSequence.");
+        List<SourceToken> tokens = new ArrayList<>();
+        for (var type = lexNext(); type != null; type = lexNext()) {
+            var start = chars.start();
+            var length = chars.length;
+            String symbol = null;
+            if (type == Token.Type.IDENTIFIER || type == Token.Type.OPERATOR) {
+                symbol = symbols.get(chars.emit(symbols));
+            } else {
+                chars.skip();
+            }
+            tokens.add(new SourceToken(type, start, length, source, symbol));
+        }
+        return tokens;
+    }
+
+    /**
+     * Equivalent to {@link #lex()}, but stores tokens in a columnar
+     * {@link TokenBuffer} rather than allocating a {@link Token} for each.
+     */
+    public TokenBuffer lexBuffer() throws LexException {
+        var tokens = new TokenBuffer(symbols, source);
+        for (var type = lexNext(); type != null; type = lexNext()) {
+            emit(type, tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Equivalent to {@link #lexBuffer()}, but recovers from errors instead of
+     * throwing a {@link LexException}: each error is added to diagnostics and
+     * the invalid token is lexed to its natural end (e.g. the closing quote
+     * or line break of a string) and then dropped, so lexing continues with
+     * the next token and finds every error in a single pass.
+     */
+    public TokenBuffer lexRecovering(List<Diagnostic> diagnostics) {
+        this.diagnostics = diagnostics;
+        try {
+            return lexBuffer();
+        } catch (LexException e) {
+            throw new AssertionError(e); //errors are recorded when recovering
+        }
+    }
+
+    /**
+     * Updates the tokens of a document after an edit, re-lexing only from
+     * the last token that could be affected by the edit until the new tokens
+     * re-synchronize with the previous ones, which are reused afterwards.
+     *
+     * <p>
+     * Lexing is context-free between tokens (string literals and comments
+     * are always part of a single token or skipped whole between tokens), so
+     * any token boundary before the edit is a safe restart point and a new
+     * token starting at the same place as a previous one after the edit
+     * means all remaining tokens are unchanged. The re-lexed region is thus
+     * proportional to the edit; unchanged tokens are only copied (shifting
+     * their offsets), which is a linear but very cheap pass.
+     *
+     * @param previous the tokens of the document before the edit
+     * @param text the document after the edit
+     * @param offset the index of the edit
+     * @param removed the number of characters removed at offset
+     * @param inserted the number of characters inserted at offset, which are
+     *                 now {@code text[offset, offset + inserted)}
+     */
+    public static TokenBuffer relex(TokenBuffer previous, CharSequence text, int offset, int removed, int inserted) throws LexException {
+        Preconditions.checkArgument(offset >= 0 && removed >= 0 && inserted >= 0 && offset + inserted <= text.length());
+        var delta = inserted - removed;
+        //find the first token which could have been affected by the edit
+        int low = 0, high = previous.size();
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (previous.end(middle) + LOOKAHEAD < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        var restart = low;
+        var start = restart > 0 ? previous.end(restart - 1) : 0;
+        var lexer = new Lexer(Reader.of(CharBuffer.wrap(text, start, text.length())), text, previous.symbols(), start);
+        var tokens = new TokenBuffer(previous.symbols(), text);
+        tokens.addAll(previous, 0, restart, 0);
+        var next = restart;
+        for (var type = lexer.lexNext(); type != null; type = lexer.lexNext()) {
+            var position = lexer.chars.start();
+            if (position >= offset + inserted) {
+                while (next < previous.size() && previous.start(next) + delta < position) {
+                    next++;
+                }
+                if (next < previous.size() && previous.start(next) + delta == position) {
+                    tokens.addAll(previous, next, previous.size(), delta);
+                    return tokens;
+                }
+            }
+            lexer.emit(type, tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the line index of the input lexed so far, which covers the whole
+     * input once lexing has finished (or any {@link LexException} index, since
+     * all line breaks before it have been skipped).
+     */
+    public LineIndex lines() {
+        return lines;
+    }
+
+    /**
+     * Returns a lazy iterator over the remaining tokens, lexing each token
+     * only when it is requested. Since {@link Iterator} cannot throw checked
+     * exceptions, a {@link LexException} is wrapped in an
+     * {@link UncheckedLexException}.
+     */
+    public Iterator<Token> tokens() {
+        return new AbstractIterator<>() {
+            @Override
+            protected Token computeNext() {
+                try {
+                    var type = lexNext();
+                    return type != null ? emit(type) : endOfData();
+                } catch (LexException e) {
+                    throw new UncheckedLexException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Lexes the next token, skipping whitespace/comments, and returns its
+     * type (with the token's characters matched in {@link #chars}) or null if
+     * the end of input has been reached.
+     */
+    private Token.Type lexNext() throws LexException {
         while (chars.has(0)) {
-            if (chars.peek("[ \b\n\r\t]")) {
+            if (chars.peek(WHITESPACE)) {
                 lexWhitespace();
-            } else if (chars.peek("/", "/")) {
+            } else if (chars.peek(SLASH, SLASH)) {
                 lexComment();
             } else {
-                tokens.add(lexToken());
+                var type = lexToken();
+                if (!invalid) {
+                    return type;
+                }
+                invalid = false;
+                chars.skip();
             }
         }
-        return tokens;
+        return null;
     }
 
     private void lexWhitespace() {
-        while (chars.match("[ \b\n\r\t]"))
-            ;
-        chars.emit();
+        chars.skipRun(' ', '\b', '\n', '\r', '\t');
+        chars.lines(lines);
+        chars.skip();
     }
 
     private void lexComment() {
-        chars.match("/");
-        chars.match("/");
-        while (chars.match("[^\n\r]"))
-            ;
-        chars.emit();
+        chars.match(SLASH);
+        chars.match(SLASH);
+        chars.findRun('\n', '\r', '\n', '\r');
+        chars.skip();
     }
 
-    private Token lexToken() throws LexException{
-        if (chars.peek("[A-Za-z_]")) {
+    private Token.Type lexToken() throws LexException{
+        if (chars.peek(IDENTIFIER_START)) {
             return lexIdentifier();
-        } else if (chars.peek("[0-9]") || chars.peek("[+-]", "[0-9]")) {
+        } else if (chars.peek(DIGIT) || chars.peek(SIGN, DIGIT)) {
             return lexNumber();
-        } else if (chars.peek("'")) {
+        } else if (chars.peek(SINGLE_QUOTE)) {
             return lexCharacter();
-        } else if (chars.peek("\"")) {
+        } else if (chars.peek(DOUBLE_QUOTE)) {
             return lexString();
         } else {
-            return lexOperator();
+            return lexOperatorType();
         }
     }
 
-    private Token lexIdentifier() {
-        chars.match("[A-Za-z_]");
-        while (chars.match("[A-Za-z0-9_-]"))
+    private Token.Type lexIdentifier() {
+        chars.match(IDENTIFIER_START);
+        while (chars.match(IDENTIFIER_PART))
             ;
-        return new Token(Token.Type.IDENTIFIER, chars.emit());
+        return Token.Type.IDENTIFIER;
     }
 
-    private Token lexNumber() {
-        chars.match("[+-]");
-        chars.match("[0-9]");
-        while (chars.match("[0-9]"))
+    private Token.Type lexNumber() {
+        chars.match(SIGN);
+        chars.match(DIGIT);
+        while (chars.match(DIGIT))
             ;
 
         boolean isDecimal = false;
-        if (chars.peek("\\.", "[0-9]")) {
+        if (chars.peek(DOT, DIGIT)) {
             isDecimal = true;
-            chars.match("\\.");
-            while (chars.match("[0-9]"))
+            chars.match(DOT);
+            while (chars.match(DIGIT))
                 ;
         }
 
-        if (chars.peek("[eE]", "[+-]", "[0-9]")) {
-            chars.match("[eE]");
-            chars.match("[+-]");
-            while (chars.match("[0-9]"))
+        if (chars.peek(EXPONENT, SIGN, DIGIT)) {
+            chars.match(EXPONENT);
+            chars.match(SIGN);
+            while (chars.match(DIGIT))
                 ;
-        } else if (chars.peek("[eE]", "[0-9]")) {
-            chars.match("[eE]");
-            while (chars.match("[0-9]"))
+        } else if (chars.peek(EXPONENT, DIGIT)) {
+            chars.match(EXPONENT);
+            while (chars.match(DIGIT))
                 ;
         }
 
-        return new Token(isDecimal ? Token.Type.DECIMAL : Token.Type.INTEGER, chars.emit());
+        return isDecimal ? Token.Type.DECIMAL : Token.Type.INTEGER;
     }
 
-    private Token lexCharacter() throws LexException{
-        chars.match("'");
+    private Token.Type lexCharacter() throws LexException{
+        chars.match(SINGLE_QUOTE);
 
         // Check for escape sequence or a valid literal character
-        if (chars.peek("\\\\")) {
+        if (chars.peek(BACKSLASH)) {
             lexEscape();
-        } else if (!chars.match("[^'\\n\\r]")) {
+        } else if (!chars.match(CHARACTER_BODY)) {
             // If it's not an escape and not a valid literal char, it's an error
-            throw new LexException("Invalid character literal", chars.index);
+            error("Invalid character literal");
         }
 
-        if (!chars.match("'")) {
-            throw new LexException("Unterminated character literal", chars.index);
+        if (!chars.match(SINGLE_QUOTE)) {
+            error("Unterminated character literal");
         }
 
-        return new Token(Token.Type.CHARACTER, chars.emit());
+        return Token.Type.CHARACTER;
     }
 
-    private Token lexString() throws LexException{
-        chars.match("\"");
+    private Token.Type lexString() throws LexException{
+        chars.match(DOUBLE_QUOTE);
 
-        while (!chars.peek("\"")) {
+        // Skip ordinary characters in bulk; only quotes, escapes, line breaks,
+        // and EOF need to be handled individually.
+        chars.findRun('"', '\\', '\n', '\r');
+        while (!chars.peek(DOUBLE_QUOTE)) {
             // Check for line breaks or EOF before the closing quote
-            if (!chars.has(0) || chars.peek("[\\n\\r]")) {
-                throw new LexException("Unterminated string literal", chars.index);
-            }
-
-            if (chars.peek("\\\\")) {
-                lexEscape();
-            } else {
-                // Consume exactly one character (the '.' regex)
-                chars.match(".");
+            if (!chars.has(0) || chars.peek(NEWLINE)) {
+                error("Unterminated string literal");
+                return Token.Type.STRING;
             }
+            lexEscape();
+            chars.findRun('"', '\\', '\n', '\r');
         }
 
-        chars.match("\"");
-        return new Token(Token.Type.STRING, chars.emit());
+        chars.match(DOUBLE_QUOTE);
+        return Token.Type.STRING;
     }
 
     private void lexEscape() throws LexException{
-        chars.match("\\\\");
+        chars.match(BACKSLASH);
         // If the next character isn't a valid escape code, throw immediately
-        if (!chars.match("[bnrt'\"\\\\]")) {
-            throw new LexException("Invalid escape sequence", chars.index);
+        if (!chars.match(ESCAPE)) {
+            error("Invalid escape sequence");
         }
     }
 
-    public Token lexOperator() throws LexException{
+    /**
+     * Lexes an operator at the current position of the input and returns it
+     * as a token, which is kept public for compatibility; {@link #lex()} and
+     * the other entry points lex operators internally.
+     */
+    public Token lexOperator() throws LexException {
+        return emit(lexOperatorType());
+    }
+
+    private Token.Type lexOperatorType() throws LexException{
         // Matches multi-char operators like <=, >=, !=, ==
         // If no match, it falls through to match any single character
-        if (!chars.match("[<>!=]", "=") && !chars.match(".")) {
-                throw new LexException("Unexpected end of input", chars.index);
+        if (!chars.match(COMPARISON, EQUALS) && !chars.match(ANY)) {
+                error("Unexpected end of input");
+                chars.advance(1);
             }
         
 
-        return new Token(Token.Type.OPERATOR, chars.emit());
+        return Token.Type.OPERATOR;
+    }
+
+    /**
+     * Reports an error at the current index, which throws a
+     * {@link LexException} unless recovering. When recovering, only the first
+     * error of a token is recorded and the token is dropped once lexed.
+     */
+    private void error(String message) throws LexException {
+        if (diagnostics == null) {
+            throw new LexException(message, chars.index);
+        }
+        if (!invalid) {
+            diagnostics.add(new Diagnostic(message, chars.index));
+            invalid = true;
+        }
+    }
+
+    /**
+     * Adds the token most recently lexed by {@link #lexNext()} to tokens.
+     */
+    private void emit(Token.Type type, TokenBuffer tokens) {
+        var start = chars.start();
+        var end = chars.index;
+        var literal = -1;
+        if (type == Token.Type.IDENTIFIER || type == Token.Type.OPERATOR || source == null) {
+            literal = chars.emit(symbols);
+        } else {
+            chars.skip();
+        }
+        tokens.add(type, start, end, literal);
+    }
+
+    /**
+     * Builds the token most recently lexed by {@link #lexNext()}. Identifiers
+     * and operators are interned, so repeated symbols share one String.
+     */
+    private Token emit(Token.Type type) {
+        if (type == Token.Type.IDENTIFIER || type == Token.Type.OPERATOR) {
+            return new Token(type, symbols.get(chars.emit(symbols)));
+        }
+        return new Token(type, chars.emit());
+    }
+
+    /**
+     * Lexes the range [start, end) of the input, which must begin at a line.
+     */
+    @SuppressWarnings("serial") //tasks are never serialized
+    private static final class Chunk extends RecursiveTask<List<Token>> {
+
+        private final CharSequence input;
+        private final int start;
+        private final int end;
+        private LexException error;
+
+        private Chunk(CharSequence input, int start, int end) {
+            this.input = input;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<Token> compute() {
+            var reader = Reader.of(CharBuffer.wrap(input, start, end));
+            try {
+                return new Lexer(reader, null, new SymbolTable(), start).lex();
+            } catch (LexException e) {
+                error = e;
+                return List.of();
+            }
+        }
+
     }
 
     /**
      * A helper class for maintaining the state of the character stream (input)
      * and methods for building up token literals.
+     *
+     * <p>
+     * Characters are read from the input into a fixed-size window, which is
+     * compacted to start at the current literal whenever it needs refilling.
+     * The window only grows if a single literal is larger than it, so memory
+     * use is bounded by the longest token rather than the size of the input.
+     * The {@link #index} is always absolute (e.g. for {@link LexException}).
      */
     private static final class CharStream {
 
-        private final String input;
+        private static final int WINDOW_SIZE = 8192;
+        private static final RunScanner SCANNER = RunScanner.get();
+
+        private final Reader input;
+        private char[] buffer = new char[WINDOW_SIZE];
+        private int base = 0; //absolute index of buffer[0]
+        private int limit = 0; //number of characters read into the buffer
+        private boolean exhausted = false;
         private int index = 0;
         private int length = 0;
 
-        public CharStream(String input) {
+        public CharStream(Reader input, int start) {
             this.input = input;
+            this.base = start;
+            this.index = start;
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return index + offset < base + limit || fill(index + offset);
         }
 
         /**
-         * Returns true if the next character(s) match their corresponding
-         * pattern(s). Each pattern is a regex matching ONE character, e.g.:
-         * - peek("/") is valid and will match the next character
-         * - peek("/", "/") is valid and will match the next two characters
-         * - peek("/+") is conceptually invalid, but will match one character
-         * - peek("//") is strictly invalid as it can never match one character
+         * Reads from the input until the character at the given absolute index
+         * is in the window, returning false if the input ends before then.
          */
-        public boolean peek(String... patterns) {
-            if (!has(patterns.length - 1)) {
-                return false;
-            }
-            for (int offset = 0; offset < patterns.length; offset++) {
-                var character = input.charAt(index + offset);
-                if (!String.valueOf(character).matches(patterns[offset])) {
-                    return false;
+        private boolean fill(int target) {
+            while (!exhausted && target >= base + limit) {
+                var start = index - length - base;
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, limit - start);
+                    base += start;
+                    limit -= start;
+                } else if (limit == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                try {
+                    var read = input.read(buffer, limit, buffer.length - limit);
+                    if (read < 0) {
+                        exhausted = true;
+                    } else {
+                        limit += read;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
             }
-            return true;
+            return target < base + limit;
+        }
+
+        private char charAt(int offset) {
+            return buffer[index + offset - base];
+        }
+
+        /**
+         * Returns true if the next character(s) are members of their
+         * corresponding {@link CharClass}(es), e.g.:
+         * - peek(SLASH) will match the next character
+         * - peek(SLASH, SLASH) will match the next two characters
+         * There are fixed-arity overloads instead of varargs so that checking
+         * a character never allocates.
+         */
+        public boolean peek(CharClass first) {
+            return has(0) && first.contains(charAt(0));
+        }
+
+        public boolean peek(CharClass first, CharClass second) {
+            return has(1)
+                && first.contains(charAt(0))
+                && second.contains(charAt(1));
+        }
+
+        public boolean peek(CharClass first, CharClass second, CharClass third) {
+            return has(2)
+                && first.contains(charAt(0))
+                && second.contains(charAt(1))
+                && third.contains(charAt(2));
         }
 
         /**
          * Equivalent to peek, but also advances the character stream.
          */
-        public boolean match(String... patterns) {
-            var peek = peek(patterns);
-            if (peek) {
-                index += patterns.length;
-                length += patterns.length;
+        public boolean match(CharClass first) {
+            return peek(first) && advance(1);
+        }
+
+        public boolean match(CharClass first, CharClass second) {
+            return peek(first, second) && advance(2);
+        }
+
+        public boolean match(CharClass first, CharClass second, CharClass third) {
+            return peek(first, second, third) && advance(3);
+        }
+
+        private boolean advance(int count) {
+            index += count;
+            length += count;
+            return true;
+        }
+
+        /**
+         * Advances until the next character is one of the given characters
+         * (or the end of input), scanning the window with {@link #SCANNER}
+         * instead of matching characters one at a time.
+         */
+        public void findRun(char a, char b, char c, char d) {
+            while (has(0)) {
+                var from = index - base;
+                var found = SCANNER.find(buffer, from, limit, a, b, c, d);
+                advance(found - from);
+                if (found < limit) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Advances while the next character is one of the given characters,
+         * which is the complement of {@link #findRun}.
+         */
+        public void skipRun(char a, char b, char c, char d, char e) {
+            while (has(0)) {
+                var from = index - base;
+                var found = SCANNER.skip(buffer, from, limit, a, b, c, d, e);
+                advance(found - from);
+                if (found < limit) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Records the line breaks in the literal being built in the given
+         * index. This is only used for whitespace, which is always matched in
+         * full, so a {@code \r\n} pair is never split between literals.
+         */
+        public void lines(LineIndex lines) {
+            var end = index - base;
+            for (int i = end - length; i < end; i++) {
+                var c = buffer[i];
+                if (c == '\n' || c == '\r' && (i + 1 == end || buffer[i + 1] != '\n')) {
+                    lines.add(base + i + 1);
+                }
             }
-            return peek;
         }
 
         /**
@@ -213,11 +686,36 @@ public final class Lexer {
          * call to emit(); also resetting the length for subsequent tokens.
          */
         public String emit() {
-            var literal = input.substring(index - length, index);
+            var literal = new String(buffer, index - length - base, length);
             length = 0;
             return literal;
         }
 
+        /**
+         * Equivalent to emit(), but interns the literal in the given table
+         * (allocating only for a new symbol) and returns its id.
+         */
+        public int emit(SymbolTable symbols) {
+            var id = symbols.intern(buffer, index - length - base, length);
+            length = 0;
+            return id;
+        }
+
+        /**
+         * Returns the absolute index of the literal being built.
+         */
+        public int start() {
+            return index - length;
+        }
+
+        /**
+         * Discards the literal built since the last call to emit(), without
+         * creating it (e.g. for whitespace/comments).
+         */
+        public void skip() {
+            length = 0;
+        }
+
     }
 
 }
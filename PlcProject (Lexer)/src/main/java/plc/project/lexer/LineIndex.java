@@ -0,0 +1,100 @@
+package plc.project.lexer;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Maps offsets in the input to lines and columns, storing only the offset at
+ * which each line starts in a compact {@code int[]}. A lexer builds its index
+ * as a side effect of skipping whitespace (the only place line breaks may
+ * occur outside of an error), so positions can be resolved after lexing
+ * without rescanning the input. Lookup is a binary search over line starts.
+ *
+ * <p>
+ * Line breaks are {@code \n}, {@code \r}, and {@code \r\n}, as in the
+ * grammar. Lines and columns are 1-based; columns count chars (or bytes, for
+ * a {@link Utf8Lexer}) from the start of the line.
+ */
+public final class LineIndex {
+
+    private int[] starts = new int[64];
+    private int size = 1; //starts[0] = 0, the first line
+
+    LineIndex() {}
+
+    /**
+     * Builds the index for the given text directly, e.g. for input which was
+     * not lexed.
+     */
+    public static LineIndex of(CharSequence text) {
+        var lines = new LineIndex();
+        for (int i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            if (c == '\n' || c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n')) {
+                lines.add(i + 1);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Records that a line starts at the given offset, which must be after the
+     * start of every line recorded so far.
+     */
+    void add(int start) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+        }
+        starts[size++] = start;
+    }
+
+    /**
+     * Returns the number of lines, which is one more than the number of line
+     * breaks (so empty input has a single line).
+     */
+    public int lines() {
+        return size;
+    }
+
+    /**
+     * Returns the offset at which the given (1-based) line starts.
+     */
+    public int start(int line) {
+        Preconditions.checkElementIndex(line - 1, size, "line");
+        return starts[line - 1];
+    }
+
+    /**
+     * Returns the (1-based) line containing the given offset.
+     */
+    public int line(int offset) {
+        Preconditions.checkArgument(offset >= 0, "Negative offset %s.", offset);
+        int low = 0, high = size - 1;
+        while (low < high) {
+            var middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low + 1;
+    }
+
+    /**
+     * Returns the (1-based) column of the given offset within its line.
+     */
+    public int column(int offset) {
+        return offset - starts[line(offset) - 1] + 1;
+    }
+
+    /**
+     * Returns the position of the given offset as {@code line:column}.
+     */
+    public String format(int offset) {
+        var line = line(offset);
+        return line + ":" + (offset - starts[line - 1] + 1);
+    }
+
+}
@@ -0,0 +1,123 @@
+package plc.project.lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link CharSequence} view of a memory-mapped file, used by
+ * {@link Lexer#map(Path)} to lex large sources without first reading them
+ * into a String (which holds a second copy of the file in memory).
+ *
+ * <p>
+ * For ASCII files, which covers nearly all generated sources, each byte is
+ * exactly one char and the view reads straight from the mapped buffer. Files
+ * containing other UTF-8 characters don't have that correspondence, so they
+ * are decoded into a {@link java.nio.CharBuffer} instead. As with
+ * {@link java.nio.file.Files#readString(Path)}, malformed UTF-8 throws a
+ * {@link java.nio.charset.CharacterCodingException} rather than being
+ * replaced.
+ */
+final class MappedSource implements CharSequence {
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private final ByteBuffer bytes;
+
+    private MappedSource(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    public static CharSequence map(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to map (" + channel.size() + " bytes): " + path);
+            }
+            //The mapping remains valid after the channel is closed.
+            var bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (isAscii(bytes)) {
+                return new MappedSource(bytes);
+            }
+            return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(bytes);
+        }
+    }
+
+    /**
+     * Checks for any byte with the high bit set, eight bytes at a time.
+     */
+    private static boolean isAscii(ByteBuffer bytes) {
+        int i = 0;
+        for (; i + Long.BYTES <= bytes.limit(); i += Long.BYTES) {
+            if ((bytes.getLong(i) & HIGH_BITS) != 0) {
+                return false;
+            }
+        }
+        for (; i < bytes.limit(); i++) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a reader over this view, widening bytes to chars in bulk rather
+     * than through {@link #charAt(int)} one character at a time.
+     */
+    public Reader reader() {
+        return new Reader() {
+
+            private final byte[] chunk = new byte[8192];
+            private int position = 0;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (position >= bytes.limit()) {
+                    return -1;
+                }
+                var count = Math.min(Math.min(length, chunk.length), bytes.limit() - position);
+                bytes.get(position, chunk, 0, count);
+                for (int i = 0; i < count; i++) {
+                    buffer[offset + i] = (char) chunk[i];
+                }
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {}
+
+        };
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) bytes.get(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new MappedSource(bytes.slice(start, end - start));
+    }
+
+    @Override
+    public String toString() {
+        var array = new byte[bytes.limit()];
+        bytes.get(0, array);
+        return new String(array, StandardCharsets.US_ASCII);
+    }
+
+}
@@ -0,0 +1,70 @@
+package plc.project.lexer;
+
+/**
+ * Finds the end of runs of characters which the lexer doesn't need to look at
+ * individually, such as indentation, comment bodies, and string bodies. Each
+ * method scans the range [from, to) of a character array and returns the
+ * index of the first character ending the run, or {@code to} if none does.
+ *
+ * <p>
+ * {@link #SCALAR} is always available. {@link #get()} prefers
+ * {@link VectorRunScanner}, which compares many characters at a time using
+ * the incubating Vector API, when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector} (and the system property
+ * {@code plc.lexer.vector} isn't {@code false}).
+ */
+interface RunScanner {
+
+    RunScanner SCALAR = new Scalar();
+
+    /**
+     * Returns the index of the first character equal to any of a, b, c or d
+     * (which may be repeated when fewer are needed).
+     */
+    int find(char[] chars, int from, int to, char a, char b, char c, char d);
+
+    /**
+     * Returns the index of the first character not equal to any of a, b, c, d
+     * or e (which may be repeated when fewer are needed).
+     */
+    int skip(char[] chars, int from, int to, char a, char b, char c, char d, char e);
+
+    static RunScanner get() {
+        if (Boolean.parseBoolean(System.getProperty("plc.lexer.vector", "true"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                //Loaded reflectively so the class is never linked without the module.
+                var type = Class.forName("plc.project.lexer.VectorRunScanner");
+                return (RunScanner) type.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ignored) {}
+        }
+        return SCALAR;
+    }
+
+    final class Scalar implements RunScanner {
+
+        @Override
+        public int find(char[] chars, int from, int to, char a, char b, char c, char d) {
+            for (int i = from; i < to; i++) {
+                var x = chars[i];
+                if (x == a || x == b || x == c || x == d) {
+                    return i;
+                }
+            }
+            return to;
+        }
+
+        @Override
+        public int skip(char[] chars, int from, int to, char a, char b, char c, char d, char e) {
+            for (int i = from; i < to; i++) {
+                var x = chars[i];
+                if (x != a && x != b && x != c && x != d && x != e) {
+                    return i;
+                }
+            }
+            return to;
+        }
+
+    }
+
+}
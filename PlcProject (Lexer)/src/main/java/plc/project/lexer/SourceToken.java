@@ -0,0 +1,51 @@
+package plc.project.lexer;
+
+/**
+ * A token that references its literal by offset into the lexer's input,
+ * rather than holding a copy of it. The literal is only built when
+ * {@link #literal()} is called, except for identifiers and operators which
+ * are interned by the lexer (and therefore already shared). {@link Token}
+ * remains the standard form, available through {@link #toToken()}.
+ */
+public final class SourceToken {
+
+    private final Token.Type type;
+    private final int start;
+    private final int length;
+    private final CharSequence source;
+    private final String symbol;
+
+    SourceToken(Token.Type type, int start, int length, CharSequence source, String symbol) {
+        this.type = type;
+        this.start = start;
+        this.length = length;
+        this.source = source;
+        this.symbol = symbol;
+    }
+
+    public Token.Type type() {
+        return type;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public String literal() {
+        return symbol != null ? symbol : source.subSequence(start, start + length).toString();
+    }
+
+    public Token toToken() {
+        return new Token(type, literal());
+    }
+
+    @Override
+    public String toString() {
+        return "SourceToken[type=" + type + ", start=" + start + ", length=" + length + "]";
+    }
+
+}
@@ -0,0 +1,149 @@
+package plc.project.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns identifier and operator literals, so that every occurrence of a
+ * symbol shares one String and looking up an existing symbol directly from a
+ * range of characters allocates nothing. Symbols are numbered in the order
+ * they are first interned, giving each a compact id.
+ *
+ * <p>
+ * Every table starts with the grammar's keywords and operators interned, in
+ * the order of {@link TokenKind#SYMBOLS}, so their ids are the same in every
+ * table and identify their {@link TokenKind}.
+ *
+ * <p>
+ * This is an open-addressing hash table using the same hash as
+ * {@link String#hashCode()}. It is not thread-safe.
+ */
+public final class SymbolTable {
+
+    private String[] symbols = new String[64];
+    private int[] slots = new int[128]; //id + 1 of the symbol, or 0 if empty
+    private int size = 0;
+
+    public SymbolTable() {
+        for (var symbol : TokenKind.SYMBOLS) {
+            intern(symbol);
+        }
+    }
+
+    /**
+     * Returns the id of the symbol made up of the given characters, adding it
+     * to the table if it is not already present.
+     */
+    public int intern(char[] chars, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        var mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            var id = slots[slot] - 1;
+            if (id < 0) {
+                return insert(slot, new String(chars, start, length));
+            } else if (matches(symbols[id], chars, start, length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Equivalent to {@link #intern(char[], int, int)} for the given range of
+     * absolute indices in a buffer of ASCII bytes.
+     */
+    public int intern(ByteBuffer bytes, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + bytes.get(i);
+        }
+        var mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            var id = slots[slot] - 1;
+            if (id < 0) {
+                var literal = new byte[length];
+                bytes.get(start, literal);
+                return insert(slot, new String(literal, StandardCharsets.ISO_8859_1));
+            } else if (matches(symbols[id], bytes, start, length)) {
+                return id;
+            }
+        }
+    }
+
+    public int intern(String symbol) {
+        var mask = slots.length - 1;
+        for (int slot = spread(symbol.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            var id = slots[slot] - 1;
+            if (id < 0) {
+                return insert(slot, symbol);
+            } else if (symbols[id].equals(symbol)) {
+                return id;
+            }
+        }
+    }
+
+    public String get(int id) {
+        return symbols[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int insert(int slot, String symbol) {
+        var id = size++;
+        if (id == symbols.length) {
+            symbols = Arrays.copyOf(symbols, symbols.length * 2);
+        }
+        symbols[id] = symbol;
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        var mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            var slot = spread(symbols[id].hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String symbol, ByteBuffer bytes, int start, int length) {
+        if (symbol.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (symbol.charAt(i) != bytes.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String symbol, char[] chars, int start, int length) {
+        if (symbol.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (symbol.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,160 @@
+package plc.project.lexer;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A columnar store of tokens, keeping each field in a parallel {@code int[]}
+ * instead of allocating a {@link Token} (and its literal) per token. A token
+ * is identified by its index and described by its {@link TokenKind}
+ * (classifying keywords and operators as the token is added), its start/end
+ * offsets in the input, and the id of its literal in the {@link SymbolTable}.
+ *
+ * <p>
+ * Identifiers and operators are always interned. Other literals are only
+ * interned if the lexer's input wasn't retained (e.g. a {@link java.io.Reader});
+ * otherwise their literal id is -1 and they are built from the input on
+ * demand. {@link #asList()} provides the standard {@code List<Token>} view.
+ */
+public final class TokenBuffer {
+
+    private final SymbolTable symbols;
+    private final CharSequence source;
+    private int[] kinds = new int[1024];
+    private int[] starts = new int[1024];
+    private int[] ends = new int[1024];
+    private int[] literals = new int[1024];
+    private int size = 0;
+
+    TokenBuffer(SymbolTable symbols, CharSequence source) {
+        this.symbols = symbols;
+        this.source = source;
+    }
+
+    void add(Token.Type type, int start, int end, int literal) {
+        if (size == kinds.length) {
+            var capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            literals = Arrays.copyOf(literals, capacity);
+        }
+        kinds[size] = TokenKind.of(type, literal);
+        starts[size] = start;
+        ends[size] = end;
+        literals[size] = literal;
+        size++;
+    }
+
+    /**
+     * Appends the tokens [from, to) of other, shifting their offsets.
+     */
+    void addAll(TokenBuffer other, int from, int to, int shift) {
+        var count = to - from;
+        if (size + count > kinds.length) {
+            var capacity = Math.max(kinds.length * 2, size + count);
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            literals = Arrays.copyOf(literals, capacity);
+        }
+        System.arraycopy(other.kinds, from, kinds, size, count);
+        System.arraycopy(other.literals, from, literals, size, count);
+        for (int i = 0; i < count; i++) {
+            starts[size + i] = other.starts[from + i] + shift;
+            ends[size + i] = other.ends[from + i] + shift;
+        }
+        size += count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+    /**
+     * Returns the token's {@link TokenKind}.
+     */
+    public int kind(int index) {
+        return kinds[index];
+    }
+
+    public Token.Type type(int index) {
+        return TokenKind.type(kinds[index]);
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * Returns the literal's id in {@link #symbols()}, or -1 if the literal
+     * was not interned (see the class documentation).
+     */
+    public int literalId(int index) {
+        return literals[index];
+    }
+
+    public String literal(int index) {
+        var id = literals[index];
+        return id >= 0 ? symbols.get(id) : source.subSequence(starts[index], ends[index]).toString();
+    }
+
+    /**
+     * Returns true if the token's literal is equal to the given literal,
+     * without building the token's literal if it was not interned.
+     */
+    public boolean literalEquals(int index, String literal) {
+        var id = literals[index];
+        if (id >= 0) {
+            return symbols.get(id).equals(literal);
+        } else if (ends[index] - starts[index] != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (source.charAt(starts[index] + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Token get(int index) {
+        return new Token(type(index), literal(index));
+    }
+
+    /**
+     * Returns a read-only view of this buffer as a {@code List<Token>}. Each
+     * call to {@link List#get(int)} creates a new token.
+     */
+    public List<Token> asList() {
+        return new TokenList();
+    }
+
+    private final class TokenList extends AbstractList<Token> implements RandomAccess {
+
+        @Override
+        public Token get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return TokenBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+package plc.project.lexer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Integer kinds classifying tokens, so that the parser can dispatch on
+ * keywords and operators with a {@code switch} instead of comparing literals.
+ * Kinds below {@link #FIRST_SYMBOL} are the {@link Token.Type} ordinals of
+ * tokens which aren't one of the grammar's keywords or operators, and every
+ * keyword and operator has its own kind after that.
+ *
+ * <p>
+ * Every {@link SymbolTable} starts with {@link #SYMBOLS} interned in order,
+ * so an interned identifier or operator's id is its kind minus
+ * {@link #FIRST_SYMBOL} if it is below {@link #SYMBOLS}' length. A
+ * {@link TokenBuffer} therefore classifies tokens as they are lexed without
+ * any extra lookup; {@link #of(Token)} classifies an existing token.
+ */
+public final class TokenKind {
+
+    public static final int EOF = -1;
+
+    public static final int IDENTIFIER = 0;
+    public static final int INTEGER = 1;
+    public static final int DECIMAL = 2;
+    public static final int CHARACTER = 3;
+    public static final int STRING = 4;
+    public static final int OPERATOR = 5;
+
+    public static final int FIRST_SYMBOL = 6;
+
+    public static final int LET = 6;
+    public static final int DEF = 7;
+    public static final int IF = 8;
+    public static final int ELSE = 9;
+    public static final int FOR = 10;
+    public static final int IN = 11;
+    public static final int DO = 12;
+    public static final int END = 13;
+    public static final int RETURN = 14;
+    public static final int OBJECT = 15;
+    public static final int NIL = 16;
+    public static final int TRUE = 17;
+    public static final int FALSE = 18;
+    public static final int AND = 19;
+    public static final int OR = 20;
+
+    public static final int LEFT_PAREN = 21;
+    public static final int RIGHT_PAREN = 22;
+    public static final int COMMA = 23;
+    public static final int SEMICOLON = 24;
+    public static final int DOT = 25;
+    public static final int EQUALS = 26;
+    public static final int PLUS = 27;
+    public static final int MINUS = 28;
+    public static final int STAR = 29;
+    public static final int SLASH = 30;
+    public static final int LESS = 31;
+    public static final int LESS_EQUAL = 32;
+    public static final int GREATER = 33;
+    public static final int GREATER_EQUAL = 34;
+    public static final int EQUAL_EQUAL = 35;
+    public static final int NOT_EQUAL = 36;
+
+    /**
+     * The number of kinds, e.g. for tables indexed by kind.
+     */
+    public static final int COUNT = NOT_EQUAL + 1;
+
+    /**
+     * The literals of the keyword/operator kinds, in order from
+     * {@link #FIRST_SYMBOL}.
+     */
+    static final String[] SYMBOLS = {
+        "LET", "DEF", "IF", "ELSE", "FOR", "IN", "DO", "END", "RETURN",
+        "OBJECT", "NIL", "TRUE", "FALSE", "AND", "OR",
+        "(", ")", ",", ";", ".", "=", "+", "-", "*", "/",
+        "<", "<=", ">", ">=", "==", "!=",
+    };
+
+    private static final int FIRST_OPERATOR = LEFT_PAREN;
+    private static final Token.Type[] TYPES = Token.Type.values();
+    private static final Map<String, Integer> KINDS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            KINDS.put(SYMBOLS[i], FIRST_SYMBOL + i);
+        }
+    }
+
+    private TokenKind() {}
+
+    /**
+     * Returns the kind of a token, given its type and literal id in a
+     * {@link SymbolTable} (or -1 if not interned).
+     */
+    static int of(Token.Type type, int literal) {
+        if ((type == Token.Type.IDENTIFIER || type == Token.Type.OPERATOR) && literal >= 0 && literal < SYMBOLS.length) {
+            return FIRST_SYMBOL + literal;
+        }
+        return type.ordinal();
+    }
+
+    /**
+     * Returns the kind of the given token, which is determined by its literal
+     * alone for keywords and operators.
+     */
+    public static int of(Token token) {
+        var kind = KINDS.get(token.literal());
+        return kind != null ? kind : token.type().ordinal();
+    }
+
+    /**
+     * Returns the token type of a kind; keywords are identifiers.
+     */
+    public static Token.Type type(int kind) {
+        if (kind < FIRST_SYMBOL) {
+            return TYPES[kind];
+        }
+        return kind < FIRST_OPERATOR ? Token.Type.IDENTIFIER : Token.Type.OPERATOR;
+    }
+
+    /**
+     * Returns the literal of a keyword or operator kind.
+     */
+    public static String literal(int kind) {
+        return SYMBOLS[kind - FIRST_SYMBOL];
+    }
+
+}
@@ -0,0 +1,20 @@
+package plc.project.lexer;
+
+/**
+ * Wraps a {@link LexException} thrown while lexing lazily, such as through
+ * {@link Lexer#tokens()}, where checked exceptions cannot be propagated.
+ */
+public final class UncheckedLexException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedLexException(LexException cause) {
+        super(cause);
+    }
+
+    @Override
+    public LexException getCause() {
+        return (LexException) super.getCause();
+    }
+
+}
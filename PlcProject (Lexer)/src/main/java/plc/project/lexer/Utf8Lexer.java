@@ -0,0 +1,331 @@
+package plc.project.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static plc.project.lexer.Lexer.*;
+
+/**
+ * A lexer working directly on UTF-8 bytes, producing the same tokens as
+ * {@link Lexer} would for the decoded input without decoding it first.
+ *
+ * <p>
+ * Every character that delimits a token in the grammar is ASCII, and an ASCII
+ * byte never occurs inside a multi-byte UTF-8 sequence, so tokens can be found
+ * by comparing bytes. Identifiers, numbers, and operators are always ASCII
+ * (apart from a stray non-ASCII operator), so only string and character
+ * literals actually containing non-ASCII bytes are ever decoded; everything
+ * else is widened from Latin-1.
+ *
+ * <p>
+ * Offsets in {@link #lexBuffer()} are byte offsets. A {@link LexException}
+ * still reports the char index (as {@link Lexer} does), which is computed by
+ * {@link #charIndex(int)} only once an error occurs. Input is expected to be
+ * well-formed UTF-8; malformed sequences decode to U+FFFD, but the reported
+ * index for an error after one may differ from {@link Lexer}'s.
+ */
+public final class Utf8Lexer {
+
+    private final ByteBuffer input;
+    private final int limit;
+    private final SymbolTable symbols = new SymbolTable();
+    private final LineIndex lines = new LineIndex();
+    private int index = 0;
+    private int start = 0; //byte offset of the current token
+    private boolean ascii = true; //whether the current token is all ASCII
+    private String literal; //the current token's literal, if already decoded
+    private String pending; //decoded characters still to be emitted as operators
+    private int pendingIndex;
+
+    public Utf8Lexer(byte[] input) {
+        this(ByteBuffer.wrap(input));
+    }
+
+    /**
+     * Creates a lexer over the remaining bytes of the given buffer (e.g. a
+     * mapped file), where offsets are relative to the buffer's position.
+     */
+    public Utf8Lexer(ByteBuffer input) {
+        this.input = input.slice();
+        this.limit = this.input.limit();
+    }
+
+    public List<Token> lex() throws LexException {
+        List<Token> tokens = new ArrayList<>();
+        for (var type = lexNext(); type != null; type = lexNext()) {
+            if (type == Token.Type.IDENTIFIER || type == Token.Type.OPERATOR) {
+                tokens.add(new Token(type, symbols.get(intern())));
+            } else {
+                tokens.add(new Token(type, literal()));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Equivalent to {@link #lex()}, but stores tokens in a {@link TokenBuffer}
+     * where start/end are byte offsets. Since the buffer can't build literals
+     * from bytes, every literal is interned.
+     */
+    public TokenBuffer lexBuffer() throws LexException {
+        var tokens = new TokenBuffer(symbols, null);
+        for (var type = lexNext(); type != null; type = lexNext()) {
+            tokens.add(type, start, index, intern());
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the line index of the input lexed so far, where offsets (and
+     * so columns) are in bytes.
+     */
+    public LineIndex lines() {
+        return lines;
+    }
+
+    /**
+     * Returns the char index (in the decoded input) of the given byte offset,
+     * which is the number of UTF-16 chars encoded by the bytes before it. This
+     * is a linear scan, as it is only needed for error reporting.
+     */
+    public int charIndex(int offset) {
+        var chars = 0;
+        for (int i = 0; i < offset; i++) {
+            var b = input.get(i);
+            if ((b & 0xC0) != 0x80) {
+                chars++;
+            }
+            if ((b & 0xF8) == 0xF0) {
+                chars++; //a supplementary character is a surrogate pair
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Lexes the next token, skipping whitespace/comments, and returns its
+     * type (with the token spanning [start, index)) or null at the end of
+     * input.
+     */
+    private Token.Type lexNext() throws LexException {
+        if (pending != null) {
+            //the remaining chars of a non-ASCII operator, which share its bytes
+            literal = String.valueOf(pending.charAt(pendingIndex++));
+            if (pendingIndex == pending.length()) {
+                pending = null;
+            }
+            return Token.Type.OPERATOR;
+        }
+        literal = null;
+        ascii = true;
+        while (index < limit) {
+            if (peek(0, NEWLINE)) {
+                //\r\n is a single line break, starting the line after \n
+                if (input.get(index) == '\n' || !(index + 1 < limit && input.get(index + 1) == '\n')) {
+                    lines.add(index + 1);
+                }
+                index++;
+            } else if (peek(0, WHITESPACE)) {
+                index++;
+            } else if (peek(0, SLASH) && peek(1, SLASH)) {
+                index += 2;
+                while (index < limit && !peek(0, NEWLINE)) {
+                    index++;
+                }
+            } else {
+                start = index;
+                return lexToken();
+            }
+        }
+        return null;
+    }
+
+    private Token.Type lexToken() throws LexException {
+        if (peek(0, IDENTIFIER_START)) {
+            return lexIdentifier();
+        } else if (peek(0, DIGIT) || peek(0, SIGN) && peek(1, DIGIT)) {
+            return lexNumber();
+        } else if (peek(0, SINGLE_QUOTE)) {
+            return lexCharacter();
+        } else if (peek(0, DOUBLE_QUOTE)) {
+            return lexString();
+        } else {
+            return lexOperator();
+        }
+    }
+
+    private Token.Type lexIdentifier() {
+        index++;
+        skip(IDENTIFIER_PART);
+        return Token.Type.IDENTIFIER;
+    }
+
+    private Token.Type lexNumber() {
+        if (peek(0, SIGN)) {
+            index++;
+        }
+        skip(DIGIT);
+
+        boolean isDecimal = false;
+        if (peek(0, DOT) && peek(1, DIGIT)) {
+            isDecimal = true;
+            index++;
+            skip(DIGIT);
+        }
+
+        if (peek(0, EXPONENT) && peek(1, SIGN) && peek(2, DIGIT)) {
+            index += 2;
+            skip(DIGIT);
+        } else if (peek(0, EXPONENT) && peek(1, DIGIT)) {
+            index++;
+            skip(DIGIT);
+        }
+
+        return isDecimal ? Token.Type.DECIMAL : Token.Type.INTEGER;
+    }
+
+    private Token.Type lexCharacter() throws LexException {
+        index++;
+
+        if (peek(0, BACKSLASH)) {
+            lexEscape();
+        } else if (index < limit && input.get(index) < 0) {
+            var length = sequence(index);
+            if (length == 4) {
+                //Lexer sees a surrogate pair, so the quote isn't next
+                throw new LexException("Unterminated character literal", charIndex(index) + 1);
+            }
+            ascii = false;
+            index += length;
+        } else if (peek(0, CHARACTER_BODY)) {
+            index++;
+        } else {
+            throw new LexException("Invalid character literal", charIndex(index));
+        }
+
+        if (!peek(0, SINGLE_QUOTE)) {
+            throw new LexException("Unterminated character literal", charIndex(index));
+        }
+        index++;
+        return Token.Type.CHARACTER;
+    }
+
+    private Token.Type lexString() throws LexException {
+        index++;
+
+        while (index < limit) {
+            var b = input.get(index);
+            if (b == '"') {
+                index++;
+                return Token.Type.STRING;
+            } else if (b == '\\') {
+                lexEscape();
+            } else if (b == '\n' || b == '\r') {
+                break;
+            } else {
+                ascii &= b >= 0;
+                index++;
+            }
+        }
+        throw new LexException("Unterminated string literal", charIndex(index));
+    }
+
+    private void lexEscape() throws LexException {
+        index++;
+        if (!peek(0, ESCAPE)) {
+            throw new LexException("Invalid escape sequence", charIndex(index));
+        }
+        index++;
+    }
+
+    private Token.Type lexOperator() throws LexException {
+        if (peek(0, COMPARISON) && peek(1, EQUALS)) {
+            index += 2;
+        } else if (input.get(index) >= 0) {
+            index++; //line breaks are whitespace, so any ASCII char matches ANY
+        } else {
+            var length = sequence(index);
+            var decoded = decode(index, index + length);
+            if (!ANY.contains(decoded.charAt(0))) {
+                throw new LexException("Unexpected end of input", charIndex(index));
+            }
+            ascii = false;
+            index += length;
+            literal = decoded.substring(0, 1);
+            if (decoded.length() > 1) {
+                pending = decoded;
+                pendingIndex = 1;
+            }
+        }
+        return Token.Type.OPERATOR;
+    }
+
+    /**
+     * Returns true if the byte at the given offset from index is ASCII and a
+     * member of the given class, which must only be used for ASCII.
+     */
+    private boolean peek(int offset, CharClass type) {
+        if (index + offset >= limit) {
+            return false;
+        }
+        var b = input.get(index + offset);
+        return b >= 0 && type.contains((char) b);
+    }
+
+    private void skip(CharClass type) {
+        while (peek(0, type)) {
+            index++;
+        }
+    }
+
+    /**
+     * Returns the length of the UTF-8 sequence at the given offset, which is
+     * cut short at the first byte which isn't a continuation byte so that a
+     * malformed sequence never consumes a following ASCII delimiter.
+     */
+    private int sequence(int offset) {
+        var lead = input.get(offset) & 0xFF;
+        var length = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+        for (int i = 1; i < length; i++) {
+            if (offset + i >= limit || (input.get(offset + i) & 0xC0) != 0x80) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private String literal() {
+        if (literal == null) {
+            literal = ascii ? widen(start, index) : decode(start, index);
+        }
+        return literal;
+    }
+
+    /**
+     * Returns the id of the current token's literal, interning ASCII directly
+     * from the input without building a String if it is already present.
+     */
+    private int intern() {
+        if (literal == null && ascii) {
+            return symbols.intern(input, start, index - start);
+        }
+        return symbols.intern(literal());
+    }
+
+    private String widen(int start, int end) {
+        return new String(bytes(start, end), StandardCharsets.ISO_8859_1);
+    }
+
+    private String decode(int start, int end) {
+        return new String(bytes(start, end), StandardCharsets.UTF_8);
+    }
+
+    private byte[] bytes(int start, int end) {
+        var bytes = new byte[end - start];
+        input.get(start, bytes);
+        return bytes;
+    }
+
+}
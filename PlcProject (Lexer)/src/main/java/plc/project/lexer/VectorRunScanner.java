@@ -0,0 +1,50 @@
+package plc.project.lexer;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link RunScanner} comparing a full vector of characters at a time,
+ * finishing any remainder shorter than a vector with {@link RunScanner#SCALAR}.
+ * This class must only be loaded through {@link RunScanner#get()}, which
+ * checks that the {@code jdk.incubator.vector} module is present.
+ */
+final class VectorRunScanner implements RunScanner {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+    @Override
+    public int find(char[] chars, int from, int to, char a, char b, char c, char d) {
+        int i = from;
+        for (var bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            var vector = ShortVector.fromCharArray(SPECIES, chars, i);
+            var mask = vector.eq((short) a)
+                .or(vector.eq((short) b))
+                .or(vector.eq((short) c))
+                .or(vector.eq((short) d));
+            if (mask.anyTrue()) {
+                return i + mask.firstTrue();
+            }
+        }
+        return SCALAR.find(chars, i, to, a, b, c, d);
+    }
+
+    @Override
+    public int skip(char[] chars, int from, int to, char a, char b, char c, char d, char e) {
+        int i = from;
+        for (var bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            var vector = ShortVector.fromCharArray(SPECIES, chars, i);
+            var mask = vector.eq((short) a)
+                .or(vector.eq((short) b))
+                .or(vector.eq((short) c))
+                .or(vector.eq((short) d))
+                .or(vector.eq((short) e))
+                .not();
+            if (mask.anyTrue()) {
+                return i + mask.firstTrue();
+            }
+        }
+        return SCALAR.skip(chars, i, to, a, b, c, d, e);
+    }
+
+}
@@ -0,0 +1,144 @@
+package plc.project.parser;
+
+import java.util.List;
+
+import static plc.project.parser.AstArena.*;
+
+/**
+ * Builds the nodes of {@link Parser#parseArena()} into an
+ * {@link AstArena.Builder}, where each node is its index in the arena. No
+ * records are created, but indices are boxed and the grammar collects each
+ * body and argument list into a list before it's appended here, so these
+ * short-lived objects are still allocated per node. Since the grammar builds
+ * children before their parent, a node's index is greater than its
+ * children's, except for the root {@link AstArena#SOURCE} which is added
+ * first.
+ */
+final class ArenaSink implements NodeSink<Integer, Integer> {
+
+    private final AstArena.Builder arena = new AstArena.Builder();
+    private final LiteralPool literals;
+    private final int source;
+
+    ArenaSink(LiteralPool literals) {
+        this.literals = literals;
+        this.source = arena.add(SOURCE, NONE);
+    }
+
+    /**
+     * Appends a top-level statement to the source.
+     */
+    void statement(int stmt) {
+        arena.append(source, stmt);
+    }
+
+    AstArena build() {
+        return arena.build();
+    }
+
+    @Override
+    public Integer letStmt(String name, Integer value) {
+        var let = arena.add(LET, name);
+        return value != null ? arena.append(let, value) : let;
+    }
+
+    @Override
+    public Integer defStmt(String name, List<String> parameters, List<Integer> body) {
+        var def = arena.add(DEF, name);
+        for (var parameter : parameters) {
+            arena.append(def, arena.add(PARAMETER, parameter));
+        }
+        return block(def, body);
+    }
+
+    @Override
+    public Integer ifStmt(Integer condition, List<Integer> thenBody, List<Integer> elseBody) {
+        var stmt = arena.append(arena.add(IF, NONE), condition);
+        arena.append(stmt, block(arena.add(BLOCK, NONE), thenBody));
+        return arena.append(stmt, block(arena.add(BLOCK, NONE), elseBody));
+    }
+
+    @Override
+    public Integer forStmt(String name, Integer expression, List<Integer> body) {
+        return block(arena.append(arena.add(FOR, name), expression), body);
+    }
+
+    @Override
+    public Integer returnStmt(Integer value) {
+        var stmt = arena.add(RETURN, NONE);
+        return value != null ? arena.append(stmt, value) : stmt;
+    }
+
+    @Override
+    public Integer expressionStmt(Integer expression) {
+        return arena.append(arena.add(EXPRESSION, NONE), expression);
+    }
+
+    @Override
+    public Integer assignmentStmt(Integer expression, Integer value) {
+        return arena.append(arena.append(arena.add(ASSIGNMENT, NONE), expression), value);
+    }
+
+    @Override
+    public Integer literalExpr(Object value) {
+        return arena.literal(value);
+    }
+
+    @Override
+    public Integer integerExpr(String literal) {
+        var value = LiteralPool.parseLong(literal);
+        if (value >= 0 && value <= Integer.MAX_VALUE) {
+            return arena.integer((int) value);
+        }
+        return arena.literal(literals.integer(literal));
+    }
+
+    @Override
+    public Integer groupExpr(Integer expression) {
+        return arena.append(arena.add(GROUP, NONE), expression);
+    }
+
+    @Override
+    public Integer binaryExpr(String operator, Integer left, Integer right) {
+        return arena.append(arena.append(arena.add(BINARY, operator), left), right);
+    }
+
+    @Override
+    public Integer variableExpr(String name) {
+        return arena.add(VARIABLE, name);
+    }
+
+    @Override
+    public Integer propertyExpr(Integer receiver, String name) {
+        return arena.append(arena.add(PROPERTY, name), receiver);
+    }
+
+    @Override
+    public Integer functionExpr(String name, List<Integer> arguments) {
+        return block(arena.add(FUNCTION, name), arguments);
+    }
+
+    @Override
+    public Integer methodExpr(Integer receiver, String name, List<Integer> arguments) {
+        return block(arena.append(arena.add(METHOD, name), receiver), arguments);
+    }
+
+    /**
+     * Appends the fields and then the methods, like {@link AstArena#of}.
+     */
+    @Override
+    public Integer objectExpr(List<Integer> fields, List<Integer> methods) {
+        return block(block(arena.add(OBJECT, NONE), fields), methods);
+    }
+
+    /**
+     * Appends each of the nodes to parent, returning parent.
+     */
+    private int block(int parent, List<Integer> nodes) {
+        for (int i = 0; i < nodes.size(); i++) {
+            arena.append(parent, nodes.get(i));
+        }
+        return parent;
+    }
+
+}
@@ -0,0 +1,455 @@
+package plc.project.parser;
+
+import com.google.common.base.Preconditions;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A compact, read-only representation of a source's AST, where every node is
+ * an index into parallel arrays holding its kind, first child, next
+ * sibling, and payload (an index into the name or literal table). A large
+ * program's {@link Ast} records are mostly object headers, {@link List}s, and
+ * {@link Optional}s, which the arena replaces with 13 bytes per node, and
+ * equal names are stored once. Integer literals which fit in a (non-negative)
+ * int are stored in the payload itself rather than as a {@link BigInteger},
+ * which is only created when the literal is read.
+ *
+ * <p>
+ * An arena is built by {@link Parser#parseArena()} or converted from an
+ * {@link Ast.Source} with {@link #of(Ast.Source)}, and converted back with
+ * {@link #toAst()}. Nodes are read either by index or with a {@link Cursor}.
+ * The root is always the {@link #SOURCE} node {@code 0}, and children appear
+ * in the order of the components of their {@link Ast} record:
+ *
+ * <ul>
+ *     <li>{@link #SOURCE}: each statement.</li>
+ *     <li>{@link #LET} (name): the value, if present.</li>
+ *     <li>{@link #DEF} (name): a {@link #PARAMETER} (name) for each
+ *     parameter, then each statement of the body.</li>
+ *     <li>{@link #IF}: the condition, then a {@link #BLOCK} of the then
+ *     statements and a {@link #BLOCK} of the else statements.</li>
+ *     <li>{@link #FOR} (name): the expression, then each statement of the
+ *     body.</li>
+ *     <li>{@link #RETURN}: the value, if present.</li>
+ *     <li>{@link #EXPRESSION}: the expression; {@link #ASSIGNMENT}: the
+ *     receiver, then the value.</li>
+ *     <li>{@link #LITERAL} (literal): no children.</li>
+ *     <li>{@link #GROUP}: the expression; {@link #BINARY} (operator): the
+ *     left, then the right operand.</li>
+ *     <li>{@link #VARIABLE} (name): no children; {@link #PROPERTY} (name): the
+ *     receiver.</li>
+ *     <li>{@link #FUNCTION} (name): each argument; {@link #METHOD} (name): the
+ *     receiver, then each argument.</li>
+ *     <li>{@link #OBJECT} (name, or null): each field ({@link #LET}) and
+ *     method ({@link #DEF}).</li>
+ * </ul>
+ */
+public final class AstArena {
+
+    public static final int SOURCE = 0;
+    public static final int LET = 1;
+    public static final int DEF = 2;
+    public static final int PARAMETER = 3;
+    public static final int IF = 4;
+    public static final int BLOCK = 5;
+    public static final int FOR = 6;
+    public static final int RETURN = 7;
+    public static final int EXPRESSION = 8;
+    public static final int ASSIGNMENT = 9;
+    public static final int LITERAL = 10;
+    public static final int GROUP = 11;
+    public static final int BINARY = 12;
+    public static final int VARIABLE = 13;
+    public static final int PROPERTY = 14;
+    public static final int FUNCTION = 15;
+    public static final int METHOD = 16;
+    public static final int OBJECT = 17;
+
+    /**
+     * Returned for a missing child or sibling.
+     */
+    public static final int NONE = -1;
+
+    private final byte[] kinds; //all kinds fit in a byte
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final int[] payloads; //NONE if the node has no name or literal, ~value for inline integers
+    private final String[] names;
+    private final Object[] literals;
+
+    private AstArena(byte[] kinds, int[] firstChildren, int[] nextSiblings, int[] payloads, String[] names, Object[] literals) {
+        this.kinds = kinds;
+        this.firstChildren = firstChildren;
+        this.nextSiblings = nextSiblings;
+        this.payloads = payloads;
+        this.names = names;
+        this.literals = literals;
+    }
+
+    public int size() {
+        return kinds.length;
+    }
+
+    public int kind(int node) {
+        return kinds[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    /**
+     * Returns the name of the node (the operator of a {@link #BINARY}), or
+     * null if it has none.
+     */
+    public String name(int node) {
+        var payload = payloads[node];
+        return kinds[node] != LITERAL && payload != NONE ? names[payload] : null;
+    }
+
+    /**
+     * Returns the value of a {@link #LITERAL} node. An integer stored inline
+     * is returned as a {@link BigInteger}, which is a new instance on each
+     * call unless it is small.
+     */
+    public Object literal(int node) {
+        Preconditions.checkArgument(kinds[node] == LITERAL, "Node %s is not a literal.", node);
+        var payload = payloads[node];
+        return payload >= 0 ? literals[payload] : LiteralPool.integer(~payload);
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A position in the arena starting at the root, which moves between
+     * parents, children, and siblings without allocating.
+     */
+    public final class Cursor {
+
+        private int[] ancestors = new int[16];
+        private int depth = 0;
+        private int node = 0;
+
+        private Cursor() {}
+
+        public int node() {
+            return node;
+        }
+
+        public int depth() {
+            return depth;
+        }
+
+        public int kind() {
+            return kinds[node];
+        }
+
+        public String name() {
+            return AstArena.this.name(node);
+        }
+
+        public Object literal() {
+            return AstArena.this.literal(node);
+        }
+
+        /**
+         * Moves to the first child, returning false (without moving) if
+         * there are no children.
+         */
+        public boolean firstChild() {
+            var child = firstChildren[node];
+            if (child == NONE) {
+                return false;
+            }
+            if (depth == ancestors.length) {
+                ancestors = Arrays.copyOf(ancestors, 2 * depth);
+            }
+            ancestors[depth++] = node;
+            node = child;
+            return true;
+        }
+
+        public boolean nextSibling() {
+            var sibling = nextSiblings[node];
+            if (sibling == NONE || depth == 0) {
+                return false;
+            }
+            node = sibling;
+            return true;
+        }
+
+        public boolean parent() {
+            if (depth == 0) {
+                return false;
+            }
+            node = ancestors[--depth];
+            return true;
+        }
+
+        /**
+         * Moves to the next node in pre-order, returning false at the end of
+         * the tree (or of the subtree the cursor was reset to).
+         */
+        public boolean next() {
+            if (firstChild()) {
+                return true;
+            }
+            while (!nextSibling()) {
+                if (!parent()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Moves to the given node, which becomes the root of the cursor.
+         */
+        public void reset(int node) {
+            Preconditions.checkElementIndex(node, kinds.length);
+            this.node = node;
+            this.depth = 0;
+        }
+
+    }
+
+    /**
+     * Converts the arena into an equal tree of {@link Ast} records.
+     */
+    public Ast.Source toAst() {
+        return new Ast.Source(statements(firstChildren[0]));
+    }
+
+    private List<Ast.Stmt> statements(int first) {
+        var statements = new ArrayList<Ast.Stmt>();
+        for (int child = first; child != NONE; child = nextSiblings[child]) {
+            statements.add(stmt(child));
+        }
+        return statements;
+    }
+
+    private Ast.Stmt stmt(int node) {
+        var child = firstChildren[node];
+        return switch (kinds[node]) {
+            case LET -> new Ast.Stmt.Let(name(node), child != NONE ? Optional.of(expr(child)) : Optional.empty());
+            case DEF -> {
+                var parameters = new ArrayList<String>();
+                for (; child != NONE && kinds[child] == PARAMETER; child = nextSiblings[child]) {
+                    parameters.add(name(child));
+                }
+                yield new Ast.Stmt.Def(name(node), parameters, statements(child));
+            }
+            case IF -> {
+                var thenBlock = nextSiblings[child];
+                yield new Ast.Stmt.If(expr(child), statements(firstChildren[thenBlock]), statements(firstChildren[nextSiblings[thenBlock]]));
+            }
+            case FOR -> new Ast.Stmt.For(name(node), expr(child), statements(nextSiblings[child]));
+            case RETURN -> new Ast.Stmt.Return(child != NONE ? Optional.of(expr(child)) : Optional.empty());
+            case EXPRESSION -> new Ast.Stmt.Expression(expr(child));
+            case ASSIGNMENT -> new Ast.Stmt.Assignment(expr(child), expr(nextSiblings[child]));
+            default -> throw new AssertionError(kinds[node]);
+        };
+    }
+
+    private Ast.Expr expr(int node) {
+        var child = firstChildren[node];
+        return switch (kinds[node]) {
+            case LITERAL -> new Ast.Expr.Literal(literal(node));
+            case GROUP -> new Ast.Expr.Group(expr(child));
+            case BINARY -> new Ast.Expr.Binary(name(node), expr(child), expr(nextSiblings[child]));
+            case VARIABLE -> new Ast.Expr.Variable(name(node));
+            case PROPERTY -> new Ast.Expr.Property(expr(child), name(node));
+            case FUNCTION -> new Ast.Expr.Function(name(node), arguments(child));
+            case METHOD -> new Ast.Expr.Method(expr(child), name(node), arguments(nextSiblings[child]));
+            case OBJECT -> {
+                var fields = new ArrayList<Ast.Stmt.Let>();
+                var methods = new ArrayList<Ast.Stmt.Def>();
+                for (; child != NONE; child = nextSiblings[child]) {
+                    switch (stmt(child)) {
+                        case Ast.Stmt.Let let -> fields.add(let);
+                        case Ast.Stmt.Def def -> methods.add(def);
+                        default -> throw new AssertionError(kinds[child]);
+                    }
+                }
+                yield new Ast.Expr.ObjectExpr(Optional.ofNullable(name(node)), fields, methods);
+            }
+            default -> throw new AssertionError(kinds[node]);
+        };
+    }
+
+    private List<Ast.Expr> arguments(int first) {
+        var arguments = new ArrayList<Ast.Expr>();
+        for (int child = first; child != NONE; child = nextSiblings[child]) {
+            arguments.add(expr(child));
+        }
+        return arguments;
+    }
+
+    /**
+     * Converts a tree of {@link Ast} records into an arena.
+     */
+    public static AstArena of(Ast.Source source) {
+        var builder = new Builder();
+        var root = builder.add(SOURCE, NONE);
+        for (var stmt : source.statements()) {
+            builder.append(root, builder.stmt(stmt));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds an arena by adding nodes and then appending them to their
+     * parents, in any order. Names are deduplicated as they are added.
+     */
+    static final class Builder {
+
+        private byte[] kinds = new byte[256];
+        private int[] firstChildren = new int[256];
+        private int[] nextSiblings = new int[256];
+        private int[] payloads = new int[256];
+        private int[] lastChildren = new int[256]; //only while building
+        private int size = 0;
+        private final HashMap<String, Integer> indices = new HashMap<>();
+        private final ArrayList<String> names = new ArrayList<>();
+        private final ArrayList<Object> literals = new ArrayList<>();
+
+        int add(int kind, int payload) {
+            if (size == kinds.length) {
+                var capacity = 2 * size;
+                kinds = Arrays.copyOf(kinds, capacity);
+                firstChildren = Arrays.copyOf(firstChildren, capacity);
+                nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+                payloads = Arrays.copyOf(payloads, capacity);
+                lastChildren = Arrays.copyOf(lastChildren, capacity);
+            }
+            kinds[size] = (byte) kind;
+            firstChildren[size] = NONE;
+            nextSiblings[size] = NONE;
+            payloads[size] = payload;
+            lastChildren[size] = NONE;
+            return size++;
+        }
+
+        int add(int kind, String name) {
+            var index = indices.get(name);
+            if (index == null) {
+                index = names.size();
+                indices.put(name, index);
+                names.add(name);
+            }
+            return add(kind, index);
+        }
+
+        int literal(Object value) {
+            if (value instanceof BigInteger integer && integer.signum() >= 0 && integer.bitLength() < Integer.SIZE) {
+                return integer(integer.intValue());
+            }
+            literals.add(value);
+            return add(LITERAL, literals.size() - 1);
+        }
+
+        int integer(int value) {
+            Preconditions.checkArgument(value >= 0, value);
+            return add(LITERAL, ~value);
+        }
+
+        /**
+         * Appends child as the last child of parent, returning parent.
+         */
+        int append(int parent, int child) {
+            var last = lastChildren[parent];
+            if (last == NONE) {
+                firstChildren[parent] = child;
+            } else {
+                nextSiblings[last] = child;
+            }
+            lastChildren[parent] = child;
+            return parent;
+        }
+
+        AstArena build() {
+            return new AstArena(
+                Arrays.copyOf(kinds, size),
+                Arrays.copyOf(firstChildren, size),
+                Arrays.copyOf(nextSiblings, size),
+                Arrays.copyOf(payloads, size),
+                names.toArray(String[]::new),
+                literals.toArray()
+            );
+        }
+
+        private int stmt(Ast.Stmt ast) {
+            return switch (ast) {
+                case Ast.Stmt.Let stmt -> {
+                    var node = add(LET, stmt.name());
+                    stmt.value().ifPresent(value -> append(node, expr(value)));
+                    yield node;
+                }
+                case Ast.Stmt.Def stmt -> {
+                    var node = add(DEF, stmt.name());
+                    for (var parameter : stmt.parameters()) {
+                        append(node, add(PARAMETER, parameter));
+                    }
+                    yield statements(node, stmt.body());
+                }
+                case Ast.Stmt.If stmt -> {
+                    var node = append(add(IF, NONE), expr(stmt.condition()));
+                    append(node, statements(add(BLOCK, NONE), stmt.thenBody()));
+                    yield append(node, statements(add(BLOCK, NONE), stmt.elseBody()));
+                }
+                case Ast.Stmt.For stmt -> statements(append(add(FOR, stmt.name()), expr(stmt.expression())), stmt.body());
+                case Ast.Stmt.Return stmt -> {
+                    var node = add(RETURN, NONE);
+                    stmt.value().ifPresent(value -> append(node, expr(value)));
+                    yield node;
+                }
+                case Ast.Stmt.Expression stmt -> append(add(EXPRESSION, NONE), expr(stmt.expression()));
+                case Ast.Stmt.Assignment stmt -> append(append(add(ASSIGNMENT, NONE), expr(stmt.expression())), expr(stmt.value()));
+            };
+        }
+
+        private int statements(int parent, List<? extends Ast.Stmt> statements) {
+            for (var stmt : statements) {
+                append(parent, stmt(stmt));
+            }
+            return parent;
+        }
+
+        private int expr(Ast.Expr ast) {
+            return switch (ast) {
+                case Ast.Expr.Literal expr -> literal(expr.value());
+                case Ast.Expr.Group expr -> append(add(GROUP, NONE), expr(expr.expression()));
+                case Ast.Expr.Binary expr -> append(append(add(BINARY, expr.operator()), expr(expr.left())), expr(expr.right()));
+                case Ast.Expr.Variable expr -> add(VARIABLE, expr.name());
+                case Ast.Expr.Property expr -> append(add(PROPERTY, expr.name()), expr(expr.receiver()));
+                case Ast.Expr.Function expr -> arguments(add(FUNCTION, expr.name()), expr.arguments());
+                case Ast.Expr.Method expr -> arguments(append(add(METHOD, expr.name()), expr(expr.receiver())), expr.arguments());
+                case Ast.Expr.ObjectExpr expr -> {
+                    var node = expr.name().isPresent() ? add(OBJECT, expr.name().get()) : add(OBJECT, NONE);
+                    statements(node, expr.fields());
+                    yield statements(node, expr.methods());
+                }
+            };
+        }
+
+        private int arguments(int parent, List<Ast.Expr> arguments) {
+            for (var argument : arguments) {
+                append(parent, expr(argument));
+            }
+            return parent;
+        }
+
+    }
+
+}
@@ -0,0 +1,306 @@
+package plc.project.parser;
+
+import com.google.common.base.Equivalence;
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Hash-conses {@link Ast} nodes, so that structurally equal nodes interned
+ * by the same interner are the same instance. Identical subtrees within a
+ * program are therefore shared, and canonical nodes can be compared with
+ * {@code ==} or used as keys of an {@link java.util.IdentityHashMap}.
+ *
+ * <p>
+ * The records in {@link Ast} compute {@code equals} and {@code hashCode} by
+ * walking their entire subtree, so this also caches a structural hash of
+ * each canonical node, available through {@link #hash(Ast)}. A node's hash
+ * is computed once from its own values and the cached hashes of its children
+ * (which are interned first), so interning is constant time per node and
+ * {@link #equivalence()} is constant time for canonical nodes. Hashes are
+ * deterministic, so equal trees have equal hashes across interners, but they
+ * differ from {@link Object#hashCode()}.
+ *
+ * <p>
+ * An interner retains every node it has interned, so it should have the same
+ * lifetime as the program(s) it's used for. It is not thread-safe.
+ */
+public final class AstInterner {
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    //Canonical nodes (and lists) by their structural hash, for interning
+    private Object[] nodes = new Object[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    //The same nodes by identity, for the hashes of canonical nodes
+    private Object[] identities = new Object[INITIAL_CAPACITY];
+    private int[] identityHashes = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Returns the number of canonical nodes, including lists of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the canonical node structurally equal to the given node,
+     * interning it (and its subtree) if there isn't one yet. A node whose
+     * children are already canonical, such as one built directly from the
+     * results of previous calls, becomes canonical itself; otherwise, its
+     * subtree is rebuilt with canonical children and immutable lists.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Ast> T intern(T node) {
+        Preconditions.checkNotNull(node);
+        if (find(node) >= 0) {
+            return node;
+        }
+        var canonical = switch (node) {
+            case Ast.Source ast -> {
+                var statements = list(ast.statements());
+                yield statements == ast.statements() ? ast : new Ast.Source(statements);
+            }
+            case Ast.Stmt.Let ast -> {
+                var value = optional(ast.value());
+                yield value == ast.value() ? ast : new Ast.Stmt.Let(ast.name(), value);
+            }
+            case Ast.Stmt.Def ast -> {
+                var parameters = list(ast.parameters());
+                var body = list(ast.body());
+                yield parameters == ast.parameters() && body == ast.body() ? ast : new Ast.Stmt.Def(ast.name(), parameters, body);
+            }
+            case Ast.Stmt.If ast -> {
+                var condition = intern(ast.condition());
+                var thenBody = list(ast.thenBody());
+                var elseBody = list(ast.elseBody());
+                yield condition == ast.condition() && thenBody == ast.thenBody() && elseBody == ast.elseBody() ? ast : new Ast.Stmt.If(condition, thenBody, elseBody);
+            }
+            case Ast.Stmt.For ast -> {
+                var expression = intern(ast.expression());
+                var body = list(ast.body());
+                yield expression == ast.expression() && body == ast.body() ? ast : new Ast.Stmt.For(ast.name(), expression, body);
+            }
+            case Ast.Stmt.Return ast -> {
+                var value = optional(ast.value());
+                yield value == ast.value() ? ast : new Ast.Stmt.Return(value);
+            }
+            case Ast.Stmt.Expression ast -> {
+                var expression = intern(ast.expression());
+                yield expression == ast.expression() ? ast : new Ast.Stmt.Expression(expression);
+            }
+            case Ast.Stmt.Assignment ast -> {
+                var expression = intern(ast.expression());
+                var value = intern(ast.value());
+                yield expression == ast.expression() && value == ast.value() ? ast : new Ast.Stmt.Assignment(expression, value);
+            }
+            case Ast.Expr.Literal ast -> ast;
+            case Ast.Expr.Group ast -> {
+                var expression = intern(ast.expression());
+                yield expression == ast.expression() ? ast : new Ast.Expr.Group(expression);
+            }
+            case Ast.Expr.Binary ast -> {
+                var left = intern(ast.left());
+                var right = intern(ast.right());
+                yield left == ast.left() && right == ast.right() ? ast : new Ast.Expr.Binary(ast.operator(), left, right);
+            }
+            case Ast.Expr.Variable ast -> ast;
+            case Ast.Expr.Property ast -> {
+                var receiver = intern(ast.receiver());
+                yield receiver == ast.receiver() ? ast : new Ast.Expr.Property(receiver, ast.name());
+            }
+            case Ast.Expr.Function ast -> {
+                var arguments = list(ast.arguments());
+                yield arguments == ast.arguments() ? ast : new Ast.Expr.Function(ast.name(), arguments);
+            }
+            case Ast.Expr.Method ast -> {
+                var receiver = intern(ast.receiver());
+                var arguments = list(ast.arguments());
+                yield receiver == ast.receiver() && arguments == ast.arguments() ? ast : new Ast.Expr.Method(receiver, ast.name(), arguments);
+            }
+            case Ast.Expr.ObjectExpr ast -> {
+                var fields = list(ast.fields());
+                var methods = list(ast.methods());
+                yield fields == ast.fields() && methods == ast.methods() ? ast : new Ast.Expr.ObjectExpr(ast.name(), fields, methods);
+            }
+        };
+        return (T) insert(canonical);
+    }
+
+    /**
+     * Returns the structural hash of the given node, which is cached for
+     * canonical nodes. A node that isn't canonical is interned first.
+     */
+    public int hash(Ast node) {
+        var index = find(node);
+        return identityHashes[index >= 0 ? index : find(intern(node))];
+    }
+
+    /**
+     * Returns an equivalence which compares nodes structurally using this
+     * interner, e.g. for {@link Equivalence#wrap(Object)} keys in a map. Both
+     * operations are constant time for canonical nodes, and intern any other
+     * nodes they are given.
+     */
+    public Equivalence<Ast> equivalence() {
+        return new Equivalence<>() {
+
+            @Override
+            protected boolean doEquivalent(Ast a, Ast b) {
+                return intern(a) == intern(b);
+            }
+
+            @Override
+            protected int doHash(Ast ast) {
+                return AstInterner.this.hash(ast);
+            }
+
+        };
+    }
+
+    private <T extends Ast> Optional<T> optional(Optional<T> value) {
+        if (value.isEmpty()) {
+            return value;
+        }
+        var canonical = intern(value.get());
+        return canonical == value.get() ? value : Optional.of(canonical);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> list(List<T> list) {
+        if (find(list) >= 0) {
+            return list;
+        }
+        var elements = list.toArray();
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] instanceof Ast ast) {
+                elements[i] = intern(ast);
+            }
+        }
+        return (List<T>) insert(List.of(elements));
+    }
+
+    /**
+     * Returns the canonical node equal to the given node, whose children must
+     * already be canonical, adding it if there isn't one yet. Since equal
+     * children are then the same instance, {@code equals} only compares the
+     * node's own values unless there is a full hash collision.
+     */
+    private Object insert(Object node) {
+        var hash = structuralHash(node);
+        var mask = nodes.length - 1;
+        var index = mix(hash) & mask;
+        while (nodes[index] != null) {
+            if (hashes[index] == hash && nodes[index].equals(node)) {
+                return nodes[index];
+            }
+            index = (index + 1) & mask;
+        }
+        nodes[index] = node;
+        hashes[index] = hash;
+        put(node, hash);
+        if (++size > nodes.length / 2) {
+            resize();
+        }
+        return node;
+    }
+
+    /**
+     * Returns the index of the given node in the identity table, or -1 if it
+     * isn't canonical.
+     */
+    private int find(Object node) {
+        var mask = identities.length - 1;
+        var index = mix(System.identityHashCode(node)) & mask;
+        while (identities[index] != null) {
+            if (identities[index] == node) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void put(Object node, int hash) {
+        var mask = identities.length - 1;
+        var index = mix(System.identityHashCode(node)) & mask;
+        while (identities[index] != null) {
+            index = (index + 1) & mask;
+        }
+        identities[index] = node;
+        identityHashes[index] = hash;
+    }
+
+    private void resize() {
+        var oldNodes = nodes;
+        var oldHashes = hashes;
+        nodes = new Object[2 * oldNodes.length];
+        hashes = new int[nodes.length];
+        identities = new Object[nodes.length];
+        identityHashes = new int[nodes.length];
+        var mask = nodes.length - 1;
+        for (int i = 0; i < oldNodes.length; i++) {
+            if (oldNodes[i] != null) {
+                var index = mix(oldHashes[i]) & mask;
+                while (nodes[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                nodes[index] = oldNodes[i];
+                hashes[index] = oldHashes[i];
+                put(oldNodes[i], oldHashes[i]);
+            }
+        }
+    }
+
+    private int structuralHash(Object node) {
+        return switch (node) {
+            case Ast.Source ast -> hash(1, ast.statements());
+            case Ast.Stmt.Let ast -> hash(hash(2, ast.name()), ast.value());
+            case Ast.Stmt.Def ast -> hash(hash(hash(3, ast.name()), ast.parameters()), ast.body());
+            case Ast.Stmt.If ast -> hash(hash(hash(4, ast.condition()), ast.thenBody()), ast.elseBody());
+            case Ast.Stmt.For ast -> hash(hash(hash(5, ast.name()), ast.expression()), ast.body());
+            case Ast.Stmt.Return ast -> hash(6, ast.value());
+            case Ast.Stmt.Expression ast -> hash(7, ast.expression());
+            case Ast.Stmt.Assignment ast -> hash(hash(8, ast.expression()), ast.value());
+            case Ast.Expr.Literal ast -> hash(9, ast.value());
+            case Ast.Expr.Group ast -> hash(10, ast.expression());
+            case Ast.Expr.Binary ast -> hash(hash(hash(11, ast.operator()), ast.left()), ast.right());
+            case Ast.Expr.Variable ast -> hash(12, ast.name());
+            case Ast.Expr.Property ast -> hash(hash(13, ast.receiver()), ast.name());
+            case Ast.Expr.Function ast -> hash(hash(14, ast.name()), ast.arguments());
+            case Ast.Expr.Method ast -> hash(hash(hash(15, ast.receiver()), ast.name()), ast.arguments());
+            case Ast.Expr.ObjectExpr ast -> hash(hash(hash(16, ast.name()), ast.fields()), ast.methods());
+            case List<?> list -> {
+                var hash = 17;
+                for (var element : list) {
+                    hash = hash(hash, element);
+                }
+                yield hash;
+            }
+            default -> throw new AssertionError(node);
+        };
+    }
+
+    /**
+     * Combines a hash with the hash of a component, which is the cached hash
+     * for (canonical) nodes and lists.
+     */
+    private int hash(int hash, Object component) {
+        var value = switch (component) {
+            case null -> 0;
+            case Ast ast -> identityHashes[find(ast)];
+            case List<?> list -> identityHashes[find(list)];
+            case Optional<?> optional -> optional.isPresent() ? hash(1, optional.get()) : 0;
+            default -> component.hashCode();
+        };
+        return 31 * hash + value;
+    }
+
+    private static int mix(int hash) {
+        var mixed = hash * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
+    }
+
+}
@@ -0,0 +1,274 @@
+package plc.project.parser;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Pretty-prints an {@link Ast} in the format of its record {@code toString}
+ * with each component on its own line, indented by nesting. Nodes whose
+ * {@code toString} has no nested brackets (e.g. {@link Ast.Expr.Variable},
+ * {@link Ast.Expr.Literal}, and empty lists) are kept on one line:
+ *
+ * <pre>{@code
+ * Source[
+ *     statements=[
+ *         Expression[
+ *             expression=Variable[name=x]
+ *         ]
+ *     ]
+ * ]
+ * }</pre>
+ *
+ * <p>
+ * Literal values are written as-is within their {@code Literal[...]}, so a
+ * string containing brackets or {@code ", name="} (e.g. {@code "a[b"}) is
+ * kept on one line. This intentionally differs from formatting
+ * {@code toString} by matching brackets (as the REPL previously did), which
+ * splits such strings and can drop a closing bracket.
+ *
+ * <p>
+ * The tree is walked directly and written to an {@link Appendable} through a
+ * fixed-size buffer, so the output is never held in memory as a whole.
+ */
+public final class AstPrinter {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final String INDENT = "    ";
+
+    private final Appendable out;
+    private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+    private int depth = 0;
+
+    private AstPrinter(Appendable out) {
+        this.out = out;
+    }
+
+    public static String print(Ast ast) {
+        var builder = new StringBuilder();
+        try {
+            print(ast, builder);
+        } catch (IOException e) {
+            throw new AssertionError(e); //StringBuilder does not throw
+        }
+        return builder.toString();
+    }
+
+    public static void print(Ast ast, Appendable out) throws IOException {
+        var printer = new AstPrinter(out);
+        printer.printAst(ast);
+        printer.flush();
+    }
+
+    private void printAst(Ast ast) throws IOException {
+        switch (ast) {
+            case Ast.Source source -> {
+                open("Source");
+                write("statements=");
+                printList(source.statements());
+                close();
+            }
+            case Ast.Stmt stmt -> printStmt(stmt);
+            case Ast.Expr expr -> printExpr(expr);
+        }
+    }
+
+    private void printStmt(Ast.Stmt ast) throws IOException {
+        switch (ast) {
+            case Ast.Stmt.Let stmt -> {
+                if (stmt.value().isEmpty()) {
+                    write("Let[name=").write(stmt.name()).write(", value=Optional.empty]");
+                    return;
+                }
+                open("Let");
+                write("name=").write(stmt.name());
+                next("value=");
+                printOptional(stmt.value());
+                close();
+            }
+            case Ast.Stmt.Def stmt -> {
+                open("Def");
+                write("name=").write(stmt.name());
+                next("parameters=").write("[");
+                for (int i = 0; i < stmt.parameters().size(); i++) {
+                    write(i == 0 ? "" : ", ").write(stmt.parameters().get(i));
+                }
+                write("]");
+                next("body=");
+                printList(stmt.body());
+                close();
+            }
+            case Ast.Stmt.If stmt -> {
+                open("If");
+                write("condition=");
+                printExpr(stmt.condition());
+                next("thenBody=");
+                printList(stmt.thenBody());
+                next("elseBody=");
+                printList(stmt.elseBody());
+                close();
+            }
+            case Ast.Stmt.For stmt -> {
+                open("For");
+                write("name=").write(stmt.name());
+                next("expression=");
+                printExpr(stmt.expression());
+                next("body=");
+                printList(stmt.body());
+                close();
+            }
+            case Ast.Stmt.Return stmt -> {
+                if (stmt.value().isEmpty()) {
+                    write("Return[value=Optional.empty]");
+                    return;
+                }
+                open("Return");
+                write("value=");
+                printOptional(stmt.value());
+                close();
+            }
+            case Ast.Stmt.Expression stmt -> {
+                open("Expression");
+                write("expression=");
+                printExpr(stmt.expression());
+                close();
+            }
+            case Ast.Stmt.Assignment stmt -> {
+                open("Assignment");
+                write("expression=");
+                printExpr(stmt.expression());
+                next("value=");
+                printExpr(stmt.value());
+                close();
+            }
+        }
+    }
+
+    private void printExpr(Ast.Expr ast) throws IOException {
+        switch (ast) {
+            case Ast.Expr.Literal expr -> {
+                var value = expr.value();
+                var clazz = value != null ? value.getClass().getSimpleName() : "N/A";
+                write("Literal[value=").write(String.valueOf(value)).write(", class=").write(clazz).write("]");
+            }
+            case Ast.Expr.Group expr -> {
+                open("Group");
+                write("expression=");
+                printExpr(expr.expression());
+                close();
+            }
+            case Ast.Expr.Binary expr -> {
+                open("Binary");
+                write("operator=").write(expr.operator());
+                next("left=");
+                printExpr(expr.left());
+                next("right=");
+                printExpr(expr.right());
+                close();
+            }
+            case Ast.Expr.Variable expr -> write("Variable[name=").write(expr.name()).write("]");
+            case Ast.Expr.Property expr -> {
+                open("Property");
+                write("receiver=");
+                printExpr(expr.receiver());
+                next("name=").write(expr.name());
+                close();
+            }
+            case Ast.Expr.Function expr -> {
+                open("Function");
+                write("name=").write(expr.name());
+                next("arguments=");
+                printList(expr.arguments());
+                close();
+            }
+            case Ast.Expr.Method expr -> {
+                open("Method");
+                write("receiver=");
+                printExpr(expr.receiver());
+                next("name=").write(expr.name());
+                next("arguments=");
+                printList(expr.arguments());
+                close();
+            }
+            case Ast.Expr.ObjectExpr expr -> {
+                open("ObjectExpr");
+                write("name=").write(expr.name().map(name -> "Optional[" + name + "]").orElse("Optional.empty"));
+                next("fields=");
+                printList(expr.fields());
+                next("methods=");
+                printList(expr.methods());
+                close();
+            }
+        }
+    }
+
+    private void printOptional(Optional<? extends Ast> optional) throws IOException {
+        open("Optional");
+        printAst(optional.orElseThrow());
+        close();
+    }
+
+    private void printList(List<? extends Ast> list) throws IOException {
+        if (list.isEmpty()) {
+            write("[]");
+            return;
+        }
+        open("");
+        for (int i = 0; i < list.size(); i++) {
+            if (i != 0) {
+                next("");
+            }
+            printAst(list.get(i));
+        }
+        close();
+    }
+
+    /**
+     * Opens a bracket, starting a new line for its first component.
+     */
+    private void open(String type) throws IOException {
+        write(type).write("[");
+        depth++;
+        newline();
+    }
+
+    /**
+     * Starts the next component of the open bracket on a new line.
+     */
+    private AstPrinter next(String component) throws IOException {
+        write(",");
+        newline();
+        return write(component);
+    }
+
+    private void close() throws IOException {
+        depth--;
+        newline();
+        write("]");
+    }
+
+    private void newline() throws IOException {
+        write("\n");
+        for (int i = 0; i < depth; i++) {
+            write(INDENT);
+        }
+    }
+
+    private AstPrinter write(String string) throws IOException {
+        if (buffer.length() + string.length() > BUFFER_SIZE) {
+            flush();
+            if (string.length() > BUFFER_SIZE) {
+                out.append(string);
+                return this;
+            }
+        }
+        buffer.append(string);
+        return this;
+    }
+
+    private void flush() throws IOException {
+        out.append(buffer);
+        buffer.setLength(0);
+    }
+
+}
@@ -0,0 +1,326 @@
+package plc.project.parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.RandomAccess;
+
+import static plc.project.parser.AstWriter.*;
+
+/**
+ * Reads an {@link Ast.Source} written by {@link AstWriter}, either eagerly
+ * (decoding and validating the whole tree up front) or lazily from a
+ * memory-mapped file with {@link #map(Path)}.
+ *
+ * <p>
+ * When reading lazily, only the string table and the offsets of the
+ * top-level statements are decoded when the file is opened. Each statement
+ * list is a view over its encoded statements which decodes a statement the
+ * first time it is accessed (along with its expressions, but not its nested
+ * statement lists) and returns the same instance afterwards. Accessing a
+ * malformed statement throws an {@link UncheckedIOException}. Lists may be
+ * shared between threads; a statement accessed concurrently for the first
+ * time may be decoded more than once, into equal trees.
+ */
+public final class AstReader {
+
+    private final ByteBuffer buffer;
+    private final String[] strings;
+    private final boolean lazy;
+
+    private AstReader(ByteBuffer buffer, String[] strings, boolean lazy) {
+        this.buffer = buffer;
+        this.strings = strings;
+        this.lazy = lazy;
+    }
+
+    public static Ast.Source read(byte[] bytes) throws IOException {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads the source from the remaining bytes of the buffer (from its
+     * position to its limit), without changing its position.
+     */
+    public static Ast.Source read(ByteBuffer buffer) throws IOException {
+        return read(buffer.slice(), false);
+    }
+
+    /**
+     * Maps the given file and returns its source, decoding statements lazily
+     * as they are accessed.
+     */
+    public static Ast.Source map(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to map (" + channel.size() + " bytes): " + path);
+            }
+            //The mapping remains valid after the channel is closed.
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), true);
+        }
+    }
+
+    private static Ast.Source read(ByteBuffer buffer, boolean lazy) throws IOException {
+        try {
+            var input = new Input(buffer, 0);
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not an AST file.");
+            }
+            var version = input.readVarint();
+            if (version != VERSION) {
+                throw new IOException("Unsupported AST version " + version + ".");
+            }
+            var strings = new String[input.readSize()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = new String(input.readBytes(), StandardCharsets.UTF_8);
+            }
+            var reader = new AstReader(buffer, strings, lazy);
+            var source = new Ast.Source(reader.readStatements(input, Ast.Stmt.class));
+            if (input.position != buffer.limit()) {
+                throw new IOException("Unexpected data at offset " + input.position + ".");
+            }
+            return source;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Unexpected end of AST file.", e);
+        }
+    }
+
+    private Ast.Stmt readStmt(Input input) throws IOException {
+        var tag = input.readByte();
+        return switch (tag) {
+            case LET -> new Ast.Stmt.Let(readString(input), Optional.empty());
+            case LET_VALUE -> new Ast.Stmt.Let(readString(input), Optional.of(readExpr(input)));
+            case DEF -> {
+                var name = readString(input);
+                var parameters = new ArrayList<String>();
+                for (int i = input.readSize(); i > 0; i--) {
+                    parameters.add(readString(input));
+                }
+                yield new Ast.Stmt.Def(name, parameters, readStatements(input, Ast.Stmt.class));
+            }
+            case IF -> new Ast.Stmt.If(readExpr(input), readStatements(input, Ast.Stmt.class), readStatements(input, Ast.Stmt.class));
+            case FOR -> new Ast.Stmt.For(readString(input), readExpr(input), readStatements(input, Ast.Stmt.class));
+            case RETURN -> new Ast.Stmt.Return(Optional.empty());
+            case RETURN_VALUE -> new Ast.Stmt.Return(Optional.of(readExpr(input)));
+            case EXPRESSION -> new Ast.Stmt.Expression(readExpr(input));
+            case ASSIGNMENT -> new Ast.Stmt.Assignment(readExpr(input), readExpr(input));
+            default -> throw new IOException("Invalid statement tag " + tag + " at offset " + (input.position - 1) + ".");
+        };
+    }
+
+    private Ast.Expr readExpr(Input input) throws IOException {
+        var tag = input.readByte();
+        return switch (tag) {
+            case NIL -> new Ast.Expr.Literal(null);
+            case TRUE -> new Ast.Expr.Literal(true);
+            case FALSE -> new Ast.Expr.Literal(false);
+            case INTEGER -> new Ast.Expr.Literal(LiteralPool.integer(unzigzag(input.readVarlong())));
+            case BIG_INTEGER -> new Ast.Expr.Literal(readBigInteger(input));
+            case DECIMAL -> {
+                var scale = (int) unzigzag(input.readVarint() & 0xFFFFFFFFL);
+                yield new Ast.Expr.Literal(BigDecimal.valueOf(unzigzag(input.readVarlong()), scale));
+            }
+            case BIG_DECIMAL -> {
+                var scale = (int) unzigzag(input.readVarint() & 0xFFFFFFFFL);
+                yield new Ast.Expr.Literal(new BigDecimal(readBigInteger(input), scale));
+            }
+            case CHARACTER -> {
+                var character = input.readVarint();
+                if (character < 0 || character > Character.MAX_VALUE) {
+                    throw new IOException("Invalid character " + character + ".");
+                }
+                yield new Ast.Expr.Literal((char) character);
+            }
+            case STRING -> new Ast.Expr.Literal(readString(input));
+            case GROUP -> new Ast.Expr.Group(readExpr(input));
+            case BINARY -> new Ast.Expr.Binary(readString(input), readExpr(input), readExpr(input));
+            case VARIABLE -> new Ast.Expr.Variable(readString(input));
+            case PROPERTY -> new Ast.Expr.Property(readExpr(input), readString(input));
+            case FUNCTION -> new Ast.Expr.Function(readString(input), readArguments(input));
+            case METHOD -> new Ast.Expr.Method(readExpr(input), readString(input), readArguments(input));
+            case OBJECT -> new Ast.Expr.ObjectExpr(Optional.empty(), readStatements(input, Ast.Stmt.Let.class), readStatements(input, Ast.Stmt.Def.class));
+            case OBJECT_NAMED -> new Ast.Expr.ObjectExpr(Optional.of(readString(input)), readStatements(input, Ast.Stmt.Let.class), readStatements(input, Ast.Stmt.Def.class));
+            default -> throw new IOException("Invalid expression tag " + tag + " at offset " + (input.position - 1) + ".");
+        };
+    }
+
+    private List<Ast.Expr> readArguments(Input input) throws IOException {
+        var arguments = new ArrayList<Ast.Expr>();
+        for (int i = input.readSize(); i > 0; i--) {
+            arguments.add(readExpr(input));
+        }
+        return arguments;
+    }
+
+    /**
+     * Reads a statement list, which when reading lazily only records where
+     * each statement starts and skips to the end of the list.
+     */
+    private <T extends Ast.Stmt> List<T> readStatements(Input input, Class<T> type) throws IOException {
+        var count = input.readSize();
+        if (lazy) {
+            var offsets = new int[2 * count];
+            for (int i = 0; i < count; i++) {
+                var size = input.readSize();
+                offsets[2 * i] = input.position;
+                input.skip(size);
+                offsets[2 * i + 1] = input.position;
+            }
+            return new Statements<>(type, offsets);
+        }
+        var statements = new ArrayList<T>(count);
+        for (int i = 0; i < count; i++) {
+            var size = input.readSize();
+            int end = input.position + size;
+            statements.add(readStmt(input, type, end));
+        }
+        return statements;
+    }
+
+    private <T extends Ast.Stmt> T readStmt(Input input, Class<T> type, int end) throws IOException {
+        int start = input.position;
+        var stmt = readStmt(input);
+        if (input.position != end) {
+            throw new IOException("Invalid statement size at offset " + start + ".");
+        }
+        if (!type.isInstance(stmt)) {
+            throw new IOException("Expected " + type.getSimpleName() + ", received " + stmt.getClass().getSimpleName() + " at offset " + start + ".");
+        }
+        return type.cast(stmt);
+    }
+
+    private BigInteger readBigInteger(Input input) throws IOException {
+        var bytes = input.readBytes();
+        if (bytes.length == 0) {
+            throw new IOException("Invalid integer at offset " + input.position + ".");
+        }
+        return new BigInteger(bytes);
+    }
+
+    private String readString(Input input) throws IOException {
+        var index = input.readVarint();
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Invalid string index " + index + " at offset " + input.position + ".");
+        }
+        return strings[index];
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * A lazily decoded statement list, where offsets holds the start and end
+     * of each statement.
+     */
+    private final class Statements<T extends Ast.Stmt> extends AbstractList<T> implements RandomAccess {
+
+        private final Class<T> type;
+        private final int[] offsets;
+        private final Object[] decoded;
+
+        private Statements(Class<T> type, int[] offsets) {
+            this.type = type;
+            this.offsets = offsets;
+            this.decoded = new Object[offsets.length / 2];
+        }
+
+        @Override
+        public T get(int index) {
+            var stmt = decoded[index];
+            if (stmt == null) {
+                try {
+                    stmt = readStmt(new Input(buffer, offsets[2 * index]), type, offsets[2 * index + 1]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (IndexOutOfBoundsException e) {
+                    throw new UncheckedIOException(new IOException("Unexpected end of AST file.", e));
+                }
+                decoded[index] = stmt;
+            }
+            return type.cast(stmt);
+        }
+
+        @Override
+        public int size() {
+            return decoded.length;
+        }
+
+    }
+
+    /**
+     * A cursor over the buffer, using absolute reads so that any number of
+     * cursors can share it.
+     */
+    private static final class Input {
+
+        private final ByteBuffer buffer;
+        private int position;
+
+        private Input(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        byte readByte() {
+            return buffer.get(position++);
+        }
+
+        int readInt() {
+            var value = buffer.getInt(position);
+            position += Integer.BYTES;
+            return value;
+        }
+
+        int readVarint() throws IOException {
+            var value = readVarlong();
+            if (value >>> Integer.SIZE != 0) {
+                throw new IOException("Invalid varint at offset " + position + ".");
+            }
+            return (int) value;
+        }
+
+        long readVarlong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                var b = buffer.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Invalid varint at offset " + position + ".");
+        }
+
+        int readSize() throws IOException {
+            var size = readVarint();
+            if (size < 0 || size > buffer.limit() - position) {
+                throw new IOException("Invalid size " + (size & 0xFFFFFFFFL) + " at offset " + position + ".");
+            }
+            return size;
+        }
+
+        byte[] readBytes() throws IOException {
+            var bytes = new byte[readSize()];
+            buffer.get(position, bytes);
+            position += bytes.length;
+            return bytes;
+        }
+
+        void skip(int size) {
+            position += size;
+        }
+
+    }
+
+}
@@ -0,0 +1,310 @@
+package plc.project.parser;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes an {@link Ast} as canonical source, with one statement per line
+ * and blocks indented by four spaces. Lexing and parsing the output of
+ * {@link Ast.Source} produced by the {@link Parser} results in an equal
+ * {@link Ast}, which also means the output of any such source is a fixed
+ * point (unlike the input, which may differ in whitespace, comments, etc.).
+ *
+ * <p>
+ * Since {@link Ast.Expr.Group} records parentheses from the source,
+ * parentheses are only added where an {@link Ast} that wasn't parsed requires
+ * them (e.g. a {@link Ast.Expr.Binary} operand of lower precedence), which
+ * then parses with an additional group. Similarly, names are written as-is,
+ * and named objects use the grammar's {@code OBJECT name DO} (which the
+ * parser doesn't support yet).
+ *
+ * <p>
+ * Like {@link AstPrinter}, output is written to an {@link Appendable} through
+ * a fixed-size buffer.
+ */
+public final class AstUnparser {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final String INDENT = "    ";
+
+    private static final Map<String, Parser.Operator> OPERATORS = new HashMap<>();
+
+    static {
+        for (var operator : Parser.OPERATORS) {
+            if (operator != null) {
+                OPERATORS.put(operator.literal(), operator);
+            }
+        }
+    }
+
+    private final Appendable out;
+    private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+    private int depth = 0;
+
+    private AstUnparser(Appendable out) {
+        this.out = out;
+    }
+
+    public static String unparse(Ast ast) {
+        var builder = new StringBuilder();
+        try {
+            unparse(ast, builder);
+        } catch (IOException e) {
+            throw new AssertionError(e); //StringBuilder does not throw
+        }
+        return builder.toString();
+    }
+
+    public static void unparse(Ast ast, Appendable out) throws IOException {
+        var unparser = new AstUnparser(out);
+        switch (ast) {
+            case Ast.Source source -> {
+                for (var stmt : source.statements()) {
+                    unparser.unparseStmt(stmt);
+                    unparser.write("\n");
+                }
+            }
+            case Ast.Stmt stmt -> unparser.unparseStmt(stmt);
+            case Ast.Expr expr -> unparser.unparseExpr(expr, 0);
+        }
+        unparser.flush();
+    }
+
+    private void unparseStmt(Ast.Stmt ast) throws IOException {
+        switch (ast) {
+            case Ast.Stmt.Let stmt -> {
+                write("LET ").write(stmt.name());
+                if (stmt.value().isPresent()) {
+                    write(" = ");
+                    unparseExpr(stmt.value().get(), 0);
+                }
+                write(";");
+            }
+            case Ast.Stmt.Def stmt -> {
+                write("DEF ").write(stmt.name()).write("(");
+                for (int i = 0; i < stmt.parameters().size(); i++) {
+                    write(i == 0 ? "" : ", ").write(stmt.parameters().get(i));
+                }
+                write(") DO");
+                unparseBlock(stmt.body());
+                write("END");
+            }
+            case Ast.Stmt.If stmt -> {
+                write("IF ");
+                unparseExpr(stmt.condition(), 0);
+                write(" DO");
+                unparseBlock(stmt.thenBody());
+                if (!stmt.elseBody().isEmpty()) {
+                    write("ELSE");
+                    unparseBlock(stmt.elseBody());
+                }
+                write("END");
+            }
+            case Ast.Stmt.For stmt -> {
+                write("FOR ").write(stmt.name()).write(" IN ");
+                unparseExpr(stmt.expression(), 0);
+                write(" DO");
+                unparseBlock(stmt.body());
+                write("END");
+            }
+            case Ast.Stmt.Return stmt -> {
+                write("RETURN");
+                if (stmt.value().isPresent()) {
+                    write(" ");
+                    unparseExpr(stmt.value().get(), 0);
+                }
+                write(";");
+            }
+            case Ast.Stmt.Expression stmt -> {
+                unparseExpr(stmt.expression(), 0);
+                write(";");
+            }
+            case Ast.Stmt.Assignment stmt -> {
+                unparseExpr(stmt.expression(), 0);
+                write(" = ");
+                unparseExpr(stmt.value(), 0);
+                write(";");
+            }
+        }
+    }
+
+    /**
+     * Writes each statement on its own line, indented one level deeper, and
+     * starts a new line for the keyword that ends the block.
+     */
+    private void unparseBlock(List<? extends Ast.Stmt> statements) throws IOException {
+        depth++;
+        for (var stmt : statements) {
+            newline();
+            unparseStmt(stmt);
+        }
+        depth--;
+        newline();
+    }
+
+    /**
+     * Writes an expression, which is parenthesized if it's a binary
+     * expression with an operator of lower than the given precedence.
+     */
+    private void unparseExpr(Ast.Expr ast, int precedence) throws IOException {
+        switch (ast) {
+            case Ast.Expr.Literal expr -> unparseLiteral(expr.value());
+            case Ast.Expr.Group expr -> {
+                write("(");
+                unparseExpr(expr.expression(), 0);
+                write(")");
+            }
+            case Ast.Expr.Binary expr -> {
+                var operator = OPERATORS.get(expr.operator());
+                Preconditions.checkArgument(operator != null, "Unknown operator %s.", expr.operator());
+                if (operator.precedence() < precedence) {
+                    write("(");
+                }
+                unparseExpr(expr.left(), operator.precedence());
+                write(" ").write(operator.literal()).write(" ");
+                unparseExpr(expr.right(), operator.rightAssociative() ? operator.precedence() : operator.precedence() + 1);
+                if (operator.precedence() < precedence) {
+                    write(")");
+                }
+            }
+            case Ast.Expr.Variable expr -> write(expr.name());
+            case Ast.Expr.Property expr -> {
+                unparseExpr(expr.receiver(), Integer.MAX_VALUE);
+                write(".").write(expr.name());
+            }
+            case Ast.Expr.Function expr -> {
+                write(expr.name());
+                unparseArguments(expr.arguments());
+            }
+            case Ast.Expr.Method expr -> {
+                unparseExpr(expr.receiver(), Integer.MAX_VALUE);
+                write(".").write(expr.name());
+                unparseArguments(expr.arguments());
+            }
+            case Ast.Expr.ObjectExpr expr -> {
+                write("OBJECT");
+                if (expr.name().isPresent()) {
+                    write(" ").write(expr.name().get());
+                }
+                write(" DO");
+                depth++;
+                for (var field : expr.fields()) {
+                    newline();
+                    unparseStmt(field);
+                }
+                for (var method : expr.methods()) {
+                    newline();
+                    unparseStmt(method);
+                }
+                depth--;
+                newline();
+                write("END");
+            }
+        }
+    }
+
+    private void unparseArguments(List<Ast.Expr> arguments) throws IOException {
+        write("(");
+        for (int i = 0; i < arguments.size(); i++) {
+            if (i != 0) {
+                write(", ");
+            }
+            unparseExpr(arguments.get(i), 0);
+        }
+        write(")");
+    }
+
+    private void unparseLiteral(Object value) throws IOException {
+        switch (value) {
+            case null -> write("NIL");
+            case Boolean bool -> write(bool ? "TRUE" : "FALSE");
+            case BigInteger integer -> write(integer.toString());
+            case BigDecimal decimal -> {
+                if (decimal.scale() > 0) {
+                    write(decimal.toPlainString());
+                } else {
+                    //A decimal needs a fractional digit to lex as one, so the
+                    //digits are written after the point (which preserves the
+                    //unscaled value) and the exponent corrects the scale.
+                    var digits = decimal.unscaledValue().abs().toString();
+                    write(decimal.signum() < 0 ? "-0." : "0.").write(digits).write("E")
+                        .write(Integer.toString(digits.length() - decimal.scale()));
+                }
+            }
+            case Character character -> {
+                write("'");
+                if (character == '\'') {
+                    write("\\'");
+                } else {
+                    escape(character);
+                }
+                write("'");
+            }
+            case String string -> {
+                write("\"");
+                var start = 0;
+                for (int i = 0; i < string.length(); i++) {
+                    var c = string.charAt(i);
+                    if (c == '"' || c == '\\' || c == '\n' || c == '\r' || c == '\t') {
+                        write(string.substring(start, i));
+                        if (c == '"') {
+                            write("\\\"");
+                        } else {
+                            escape(c);
+                        }
+                        start = i + 1;
+                    }
+                }
+                write(string.substring(start)).write("\"");
+            }
+            default -> throw new IllegalArgumentException("Unknown literal type " + value.getClass().getName() + ".");
+        }
+    }
+
+    /**
+     * Writes a character of a character or string literal, escaping
+     * backslashes and line breaks (which can't be written as-is) and tabs.
+     * Other characters are written as-is, including {@code \b} since the
+     * parser doesn't unescape it.
+     */
+    private void escape(char c) throws IOException {
+        write(switch (c) {
+            case '\\' -> "\\\\";
+            case '\n' -> "\\n";
+            case '\r' -> "\\r";
+            case '\t' -> "\\t";
+            default -> String.valueOf(c);
+        });
+    }
+
+    private void newline() throws IOException {
+        write("\n");
+        for (int i = 0; i < depth; i++) {
+            write(INDENT);
+        }
+    }
+
+    private AstUnparser write(String string) throws IOException {
+        if (buffer.length() + string.length() > BUFFER_SIZE) {
+            flush();
+            if (string.length() > BUFFER_SIZE) {
+                out.append(string);
+                return this;
+            }
+        }
+        buffer.append(string);
+        return this;
+    }
+
+    private void flush() throws IOException {
+        out.append(buffer);
+        buffer.setLength(0);
+    }
+
+}
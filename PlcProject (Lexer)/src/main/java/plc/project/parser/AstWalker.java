@@ -0,0 +1,280 @@
+package plc.project.parser;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Walks an {@link Ast}, calling each of its {@link Visitor}s before
+ * ({@link Visitor#enter(Ast)}) and after ({@link Visitor#exit(Ast)}) the
+ * children of every node. Children are all of a node's {@link Ast.Stmt} and
+ * {@link Ast.Expr} components, visited in declaration order (e.g. for an
+ * {@link Ast.Stmt.If}, the condition and then the statements of both bodies).
+ *
+ * <p>
+ * Visitors control the walk through the {@link Action} they return, which
+ * applies to that visitor only: a visitor which skips a node's children
+ * still exits the node, and a visitor which stops receives no further calls.
+ * This lets several independent analyses share one traversal, and the walk
+ * only ends early (or skips a subtree) once every visitor has.
+ *
+ * <p>
+ * {@link #walk(Ast)} recurses through the tree, while
+ * {@link #walkIterative(Ast)} uses an explicit stack, and so supports trees
+ * of any depth (e.g. from {@link Parser#parse(String, long)}). Neither
+ * allocates (beyond growing the explicit stack) and both dispatch once per
+ * node, and a walker can be reused but is not thread-safe.
+ */
+public final class AstWalker {
+
+    public enum Action {
+        /**
+         * Continues the walk, including the children of the node.
+         */
+        CONTINUE,
+        /**
+         * Skips the children of the node, which is only meaningful from
+         * {@link Visitor#enter(Ast)}; the node is still exited.
+         */
+        SKIP,
+        /**
+         * Stops the walk for this visitor.
+         */
+        STOP,
+    }
+
+    public interface Visitor {
+
+        default Action enter(Ast node) {
+            return Action.CONTINUE;
+        }
+
+        default Action exit(Ast node) {
+            return Action.CONTINUE;
+        }
+
+    }
+
+    private final Visitor[] visitors;
+    //The depth of the node whose children each visitor skips, or NONE
+    private final int[] skipped;
+    private int active;
+    private int depth;
+    //The explicit stack of walkIterative, where exits marks nodes to exit
+    private Ast[] stack = new Ast[64];
+    private boolean[] exits = new boolean[64];
+    private int size;
+
+    private static final int NONE = Integer.MAX_VALUE;
+    private static final int STOPPED = -1;
+
+    public AstWalker(Visitor... visitors) {
+        Preconditions.checkArgument(visitors.length > 0, "Expected at least one visitor.");
+        this.visitors = visitors.clone();
+        this.skipped = new int[visitors.length];
+    }
+
+    /**
+     * Walks the tree recursively, returning {@code true} if it completed or
+     * {@code false} if every visitor stopped.
+     */
+    public boolean walk(Ast root) {
+        reset();
+        return visit(root);
+    }
+
+    /**
+     * Walks the tree with an explicit stack rather than recursion, which is
+     * otherwise identical to {@link #walk(Ast)}.
+     */
+    public boolean walkIterative(Ast root) {
+        reset();
+        size = 0;
+        push(root, false);
+        while (size > 0) {
+            var node = stack[--size];
+            stack[size] = null;
+            if (exits[size]) {
+                if (exit(node) == Action.STOP) {
+                    Arrays.fill(stack, 0, size, null);
+                    return false;
+                }
+                continue;
+            }
+            var action = enter(node);
+            if (action == Action.STOP) {
+                Arrays.fill(stack, 0, size, null);
+                return false;
+            }
+            push(node, true);
+            if (action == Action.CONTINUE) {
+                pushChildren(node);
+            }
+        }
+        return true;
+    }
+
+    private boolean visit(Ast node) {
+        var action = enter(node);
+        if (action == Action.STOP) {
+            return false;
+        }
+        if (action == Action.CONTINUE && !visitChildren(node)) {
+            return false;
+        }
+        return exit(node) != Action.STOP;
+    }
+
+    private boolean visitChildren(Ast node) {
+        return switch (node) {
+            case Ast.Source ast -> visitAll(ast.statements());
+            case Ast.Stmt stmt -> switch (stmt) {
+                case Ast.Stmt.Let ast -> ast.value().isEmpty() || visit(ast.value().get());
+                case Ast.Stmt.Def ast -> visitAll(ast.body());
+                case Ast.Stmt.If ast -> visit(ast.condition()) && visitAll(ast.thenBody()) && visitAll(ast.elseBody());
+                case Ast.Stmt.For ast -> visit(ast.expression()) && visitAll(ast.body());
+                case Ast.Stmt.Return ast -> ast.value().isEmpty() || visit(ast.value().get());
+                case Ast.Stmt.Expression ast -> visit(ast.expression());
+                case Ast.Stmt.Assignment ast -> visit(ast.expression()) && visit(ast.value());
+            };
+            case Ast.Expr expr -> switch (expr) {
+                case Ast.Expr.Literal ast -> true;
+                case Ast.Expr.Group ast -> visit(ast.expression());
+                case Ast.Expr.Binary ast -> visit(ast.left()) && visit(ast.right());
+                case Ast.Expr.Variable ast -> true;
+                case Ast.Expr.Property ast -> visit(ast.receiver());
+                case Ast.Expr.Function ast -> visitAll(ast.arguments());
+                case Ast.Expr.Method ast -> visit(ast.receiver()) && visitAll(ast.arguments());
+                case Ast.Expr.ObjectExpr ast -> visitAll(ast.fields()) && visitAll(ast.methods());
+            };
+        };
+    }
+
+    private boolean visitAll(List<? extends Ast> nodes) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (!visit(nodes.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Pushes the children of the node in reverse, so they're popped in
+     * declaration order.
+     */
+    private void pushChildren(Ast node) {
+        switch (node) {
+            case Ast.Source ast -> pushAll(ast.statements());
+            case Ast.Stmt stmt -> {
+                switch (stmt) {
+                    case Ast.Stmt.Let ast -> {
+                        if (ast.value().isPresent()) {
+                            push(ast.value().get(), false);
+                        }
+                    }
+                    case Ast.Stmt.Def ast -> pushAll(ast.body());
+                    case Ast.Stmt.If ast -> {
+                        pushAll(ast.elseBody());
+                        pushAll(ast.thenBody());
+                        push(ast.condition(), false);
+                    }
+                    case Ast.Stmt.For ast -> {
+                        pushAll(ast.body());
+                        push(ast.expression(), false);
+                    }
+                    case Ast.Stmt.Return ast -> {
+                        if (ast.value().isPresent()) {
+                            push(ast.value().get(), false);
+                        }
+                    }
+                    case Ast.Stmt.Expression ast -> push(ast.expression(), false);
+                    case Ast.Stmt.Assignment ast -> {
+                        push(ast.value(), false);
+                        push(ast.expression(), false);
+                    }
+                }
+            }
+            case Ast.Expr expr -> {
+                switch (expr) {
+                    case Ast.Expr.Literal ast -> {}
+                    case Ast.Expr.Group ast -> push(ast.expression(), false);
+                    case Ast.Expr.Binary ast -> {
+                        push(ast.right(), false);
+                        push(ast.left(), false);
+                    }
+                    case Ast.Expr.Variable ast -> {}
+                    case Ast.Expr.Property ast -> push(ast.receiver(), false);
+                    case Ast.Expr.Function ast -> pushAll(ast.arguments());
+                    case Ast.Expr.Method ast -> {
+                        pushAll(ast.arguments());
+                        push(ast.receiver(), false);
+                    }
+                    case Ast.Expr.ObjectExpr ast -> {
+                        pushAll(ast.methods());
+                        pushAll(ast.fields());
+                    }
+                }
+            }
+        }
+    }
+
+    private void pushAll(List<? extends Ast> nodes) {
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            push(nodes.get(i), false);
+        }
+    }
+
+    private void push(Ast node, boolean exit) {
+        if (size == stack.length) {
+            stack = Arrays.copyOf(stack, 2 * size);
+            exits = Arrays.copyOf(exits, 2 * size);
+        }
+        stack[size] = node;
+        exits[size++] = exit;
+    }
+
+    private void reset() {
+        Arrays.fill(skipped, NONE);
+        active = visitors.length;
+        depth = 0;
+    }
+
+    /**
+     * Enters a node with every visitor that isn't stopped or skipping it,
+     * returning {@link Action#CONTINUE} if any continue into its children.
+     */
+    private Action enter(Ast node) {
+        depth++;
+        var action = Action.SKIP;
+        for (int i = 0; i < visitors.length; i++) {
+            if (skipped[i] >= depth) {
+                switch (visitors[i].enter(node)) {
+                    case CONTINUE -> action = Action.CONTINUE;
+                    case SKIP -> skipped[i] = depth;
+                    case STOP -> {
+                        skipped[i] = STOPPED;
+                        active--;
+                    }
+                }
+            }
+        }
+        return active == 0 ? Action.STOP : action;
+    }
+
+    private Action exit(Ast node) {
+        for (int i = 0; i < visitors.length; i++) {
+            if (skipped[i] >= depth) {
+                skipped[i] = NONE;
+                if (visitors[i].exit(node) == Action.STOP) {
+                    skipped[i] = STOPPED;
+                    active--;
+                }
+            }
+        }
+        depth--;
+        return active == 0 ? Action.STOP : Action.CONTINUE;
+    }
+
+}
@@ -0,0 +1,311 @@
+package plc.project.parser;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Writes an {@link Ast.Source} in a compact binary format, which is read back
+ * by {@link AstReader}. A file is laid out as:
+ *
+ * <ul>
+ *     <li>The magic number {@code "PLCA"} and a varint {@link #VERSION}.</li>
+ *     <li>A string table: a varint count followed by each string as a varint
+ *     UTF-8 length and bytes. Every name, operator, and string literal is
+ *     stored once and referred to by its varint index.</li>
+ *     <li>The statements of the source, as a statement list.</li>
+ * </ul>
+ *
+ * <p>
+ * Each node is a tag byte followed by its components in declaration order.
+ * Optional components are folded into the tag (e.g. {@link #LET} and
+ * {@link #LET_VALUE}), as are literal types: integers and decimals that fit
+ * in a long are zigzag varints, larger ones their two's complement bytes, and
+ * characters are varints. Expression lists are a varint count followed by
+ * each expression, while statement lists also prefix every statement with
+ * its varint size in bytes, so that the reader can skip statements and only
+ * decode the ones that are accessed.
+ */
+public final class AstWriter {
+
+    static final int MAGIC = 0x504C4341; //"PLCA"
+    static final int VERSION = 1;
+
+    static final byte LET = 0;
+    static final byte LET_VALUE = 1;
+    static final byte DEF = 2;
+    static final byte IF = 3;
+    static final byte FOR = 4;
+    static final byte RETURN = 5;
+    static final byte RETURN_VALUE = 6;
+    static final byte EXPRESSION = 7;
+    static final byte ASSIGNMENT = 8;
+    static final byte NIL = 9;
+    static final byte TRUE = 10;
+    static final byte FALSE = 11;
+    static final byte INTEGER = 12;
+    static final byte BIG_INTEGER = 13;
+    static final byte DECIMAL = 14;
+    static final byte BIG_DECIMAL = 15;
+    static final byte CHARACTER = 16;
+    static final byte STRING = 17;
+    static final byte GROUP = 18;
+    static final byte BINARY = 19;
+    static final byte VARIABLE = 20;
+    static final byte PROPERTY = 21;
+    static final byte FUNCTION = 22;
+    static final byte METHOD = 23;
+    static final byte OBJECT = 24;
+    static final byte OBJECT_NAMED = 25;
+
+    private final HashMap<String, Integer> indices = new HashMap<>();
+    private final Output strings = new Output();
+    private final Output tree = new Output();
+
+    private AstWriter() {}
+
+    public static byte[] write(Ast.Source source) {
+        var writer = new AstWriter();
+        writer.writeStatements(source.statements());
+        var header = new Output();
+        header.writeInt(MAGIC);
+        header.writeVarint(VERSION);
+        header.writeVarint(writer.indices.size());
+        var bytes = Arrays.copyOf(header.bytes, header.size + writer.strings.size + writer.tree.size);
+        System.arraycopy(writer.strings.bytes, 0, bytes, header.size, writer.strings.size);
+        System.arraycopy(writer.tree.bytes, 0, bytes, header.size + writer.strings.size, writer.tree.size);
+        return bytes;
+    }
+
+    public static void write(Ast.Source source, Path path) throws IOException {
+        Files.write(path, write(source));
+    }
+
+    private void writeStmt(Ast.Stmt ast) {
+        switch (ast) {
+            case Ast.Stmt.Let stmt -> {
+                tree.writeByte(stmt.value().isPresent() ? LET_VALUE : LET);
+                writeString(stmt.name());
+                stmt.value().ifPresent(this::writeExpr);
+            }
+            case Ast.Stmt.Def stmt -> {
+                tree.writeByte(DEF);
+                writeString(stmt.name());
+                tree.writeVarint(stmt.parameters().size());
+                for (var parameter : stmt.parameters()) {
+                    writeString(parameter);
+                }
+                writeStatements(stmt.body());
+            }
+            case Ast.Stmt.If stmt -> {
+                tree.writeByte(IF);
+                writeExpr(stmt.condition());
+                writeStatements(stmt.thenBody());
+                writeStatements(stmt.elseBody());
+            }
+            case Ast.Stmt.For stmt -> {
+                tree.writeByte(FOR);
+                writeString(stmt.name());
+                writeExpr(stmt.expression());
+                writeStatements(stmt.body());
+            }
+            case Ast.Stmt.Return stmt -> {
+                tree.writeByte(stmt.value().isPresent() ? RETURN_VALUE : RETURN);
+                stmt.value().ifPresent(this::writeExpr);
+            }
+            case Ast.Stmt.Expression stmt -> {
+                tree.writeByte(EXPRESSION);
+                writeExpr(stmt.expression());
+            }
+            case Ast.Stmt.Assignment stmt -> {
+                tree.writeByte(ASSIGNMENT);
+                writeExpr(stmt.expression());
+                writeExpr(stmt.value());
+            }
+        }
+    }
+
+    private void writeExpr(Ast.Expr ast) {
+        switch (ast) {
+            case Ast.Expr.Literal expr -> writeLiteral(expr.value());
+            case Ast.Expr.Group expr -> {
+                tree.writeByte(GROUP);
+                writeExpr(expr.expression());
+            }
+            case Ast.Expr.Binary expr -> {
+                tree.writeByte(BINARY);
+                writeString(expr.operator());
+                writeExpr(expr.left());
+                writeExpr(expr.right());
+            }
+            case Ast.Expr.Variable expr -> {
+                tree.writeByte(VARIABLE);
+                writeString(expr.name());
+            }
+            case Ast.Expr.Property expr -> {
+                tree.writeByte(PROPERTY);
+                writeExpr(expr.receiver());
+                writeString(expr.name());
+            }
+            case Ast.Expr.Function expr -> {
+                tree.writeByte(FUNCTION);
+                writeString(expr.name());
+                writeArguments(expr.arguments());
+            }
+            case Ast.Expr.Method expr -> {
+                tree.writeByte(METHOD);
+                writeExpr(expr.receiver());
+                writeString(expr.name());
+                writeArguments(expr.arguments());
+            }
+            case Ast.Expr.ObjectExpr expr -> {
+                tree.writeByte(expr.name().isPresent() ? OBJECT_NAMED : OBJECT);
+                expr.name().ifPresent(this::writeString);
+                writeStatements(expr.fields());
+                writeStatements(expr.methods());
+            }
+        }
+    }
+
+    private void writeLiteral(Object value) {
+        switch (value) {
+            case null -> tree.writeByte(NIL);
+            case Boolean bool -> tree.writeByte(bool ? TRUE : FALSE);
+            case BigInteger integer -> {
+                if (integer.bitLength() < Long.SIZE) {
+                    tree.writeByte(INTEGER);
+                    tree.writeVarlong(zigzag(integer.longValue()));
+                } else {
+                    tree.writeByte(BIG_INTEGER);
+                    tree.writeBytes(integer.toByteArray());
+                }
+            }
+            case BigDecimal decimal -> {
+                var unscaled = decimal.unscaledValue();
+                if (unscaled.bitLength() < Long.SIZE) {
+                    tree.writeByte(DECIMAL);
+                    tree.writeVarint((int) zigzag(decimal.scale()));
+                    tree.writeVarlong(zigzag(unscaled.longValue()));
+                } else {
+                    tree.writeByte(BIG_DECIMAL);
+                    tree.writeVarint((int) zigzag(decimal.scale()));
+                    tree.writeBytes(unscaled.toByteArray());
+                }
+            }
+            case Character character -> {
+                tree.writeByte(CHARACTER);
+                tree.writeVarint(character);
+            }
+            case String string -> {
+                tree.writeByte(STRING);
+                writeString(string);
+            }
+            default -> throw new IllegalArgumentException("Unsupported literal " + value.getClass().getName() + ".");
+        }
+    }
+
+    private void writeArguments(List<Ast.Expr> arguments) {
+        tree.writeVarint(arguments.size());
+        for (var argument : arguments) {
+            writeExpr(argument);
+        }
+    }
+
+    /**
+     * Writes each statement followed by its size, then moves the statement
+     * over to make room for the size in front of it. Statements are rarely
+     * nested more than a few levels deep, so this costs far less than
+     * encoding each statement into a buffer of its own.
+     */
+    private void writeStatements(List<? extends Ast.Stmt> statements) {
+        tree.writeVarint(statements.size());
+        for (var stmt : statements) {
+            int start = tree.size;
+            writeStmt(stmt);
+            tree.insertVarint(start, tree.size - start);
+        }
+    }
+
+    private void writeString(String string) {
+        var index = indices.get(string);
+        if (index == null) {
+            index = indices.size();
+            indices.put(string, index);
+            strings.writeBytes(string.getBytes(StandardCharsets.UTF_8));
+        }
+        tree.writeVarint(index);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * A growable byte array, which unlike a {@link java.io.ByteArrayOutputStream}
+     * allows inserting before what has already been written.
+     */
+    private static final class Output {
+
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+
+        private void ensure(int additional) {
+            if (size + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensure(Integer.BYTES);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarint(int value) {
+            writeVarlong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarlong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] array) {
+            writeVarint(array.length);
+            ensure(array.length);
+            System.arraycopy(array, 0, bytes, size, array.length);
+            size += array.length;
+        }
+
+        void insertVarint(int position, int value) {
+            int length = 1;
+            for (int remaining = value >>> 7; remaining != 0; remaining >>>= 7) {
+                length++;
+            }
+            ensure(length);
+            System.arraycopy(bytes, position, bytes, position + length, size - position);
+            int end = size;
+            size = position;
+            writeVarint(value);
+            size = end + length;
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package plc.project.parser;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+
+/**
+ * Canonicalizes the values of literal tokens within a parse, so that every
+ * occurrence of the same literal shares one value and the token is only
+ * converted (e.g. by {@link BigInteger#BigInteger(String)} or unescaping a
+ * string) the first time it is seen. Values are keyed by the token's literal,
+ * so equal values spelled differently (e.g. {@code 1} and {@code +1}) are
+ * not shared.
+ *
+ * <p>
+ * Small non-negative integers bypass the pool entirely and share instances
+ * across all parses, as do integers fitting in a long which the parser
+ * converts without parsing a {@link BigInteger}. The pool is cleared when it
+ * reaches {@link #CAPACITY} entries, so a long-running parse (e.g. with
+ * {@link Parser#statements()}) doesn't retain every distinct literal.
+ */
+final class LiteralPool {
+
+    static final int CAPACITY = 1 << 16;
+
+    private static final BigInteger[] SMALL_INTEGERS = new BigInteger[1024];
+
+    static {
+        for (int i = 0; i < SMALL_INTEGERS.length; i++) {
+            SMALL_INTEGERS[i] = BigInteger.valueOf(i);
+        }
+    }
+
+    private final HashMap<String, Object> values = new HashMap<>();
+
+    /**
+     * Returns the BigInteger with the given value, which is a shared instance
+     * for small values.
+     */
+    static BigInteger integer(long value) {
+        return value >= 0 && value < SMALL_INTEGERS.length ? SMALL_INTEGERS[(int) value] : BigInteger.valueOf(value);
+    }
+
+    /**
+     * Returns the value of an integer literal which is an optional sign and
+     * at most 18 digits (and therefore fits in a long), or
+     * {@link Long#MIN_VALUE} for any other literal (which includes exponents).
+     */
+    static long parseLong(String literal) {
+        var start = literal.charAt(0) == '+' || literal.charAt(0) == '-' ? 1 : 0;
+        if (literal.length() == start || literal.length() - start > 18) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (int i = start; i < literal.length(); i++) {
+            var digit = literal.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.MIN_VALUE;
+            }
+            value = 10 * value + digit;
+        }
+        return literal.charAt(0) == '-' ? -value : value;
+    }
+
+    BigInteger integer(String literal) {
+        var value = parseLong(literal);
+        if (value >= 0 && value < SMALL_INTEGERS.length) {
+            return SMALL_INTEGERS[(int) value];
+        }
+        var integer = (BigInteger) values.get(literal);
+        if (integer == null) {
+            integer = value != Long.MIN_VALUE ? BigInteger.valueOf(value) : new BigInteger(literal);
+            put(literal, integer);
+        }
+        return integer;
+    }
+
+    BigDecimal decimal(String literal) {
+        var decimal = (BigDecimal) values.get(literal);
+        if (decimal == null) {
+            decimal = new BigDecimal(literal);
+            put(literal, decimal);
+        }
+        return decimal;
+    }
+
+    Character character(String literal) {
+        var character = (Character) values.get(literal);
+        if (character == null) {
+            character = Parser.parseCharacterLiteral(literal);
+            put(literal, character);
+        }
+        return character;
+    }
+
+    String string(String literal) {
+        var string = (String) values.get(literal);
+        if (string == null) {
+            string = Parser.parseStringLiteral(literal);
+            put(literal, string);
+        }
+        return string;
+    }
+
+    private void put(String literal, Object value) {
+        if (values.size() == CAPACITY) {
+            values.clear();
+        }
+        values.put(literal, value);
+    }
+
+}
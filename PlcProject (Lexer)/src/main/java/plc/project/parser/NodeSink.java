@@ -0,0 +1,59 @@
+package plc.project.parser;
+
+import java.util.List;
+
+/**
+ * Builds the nodes of the {@link Parser}'s grammar, where S and E are the
+ * types of statement and expression nodes. Each rule of the grammar parses
+ * the children of a node before calling the sink to build it, so the same
+ * grammar builds {@link Ast} records as well as an {@link AstArena} (through
+ * an {@link ArenaSink}). A value or name which is absent in the source is
+ * passed as null.
+ */
+interface NodeSink<S, E> {
+
+    S letStmt(String name, E value);
+
+    S defStmt(String name, List<String> parameters, List<S> body);
+
+    S ifStmt(E condition, List<S> thenBody, List<S> elseBody);
+
+    S forStmt(String name, E expression, List<S> body);
+
+    S returnStmt(E value);
+
+    S expressionStmt(E expression);
+
+    S assignmentStmt(E expression, E value);
+
+    /**
+     * Builds a literal with the value of a {@code NIL}, {@code TRUE},
+     * {@code FALSE}, decimal, character, or string token.
+     */
+    E literalExpr(Object value);
+
+    /**
+     * Builds a literal from the literal of an integer token, which is passed
+     * as-is so the sink can choose how to store it.
+     */
+    E integerExpr(String literal);
+
+    E groupExpr(E expression);
+
+    E binaryExpr(String operator, E left, E right);
+
+    E variableExpr(String name);
+
+    E propertyExpr(E receiver, String name);
+
+    E functionExpr(String name, List<E> arguments);
+
+    E methodExpr(E receiver, String name, List<E> arguments);
+
+    /**
+     * Builds an object from its fields ({@link #letStmt}) and methods
+     * ({@link #defStmt}), each in source order.
+     */
+    E objectExpr(List<S> fields, List<S> methods);
+
+}
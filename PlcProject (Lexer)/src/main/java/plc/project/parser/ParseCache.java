@@ -0,0 +1,217 @@
+package plc.project.parser;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Utf8Lexer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content-addressed cache of parsed sources in a local directory, so that
+ * unchanged files are never lexed or parsed twice. Each entry is named by a
+ * 128-bit hash of the source's UTF-8 bytes together with {@link #VERSION},
+ * so editing a file or changing the parser simply misses, and stale entries
+ * age out of the cache.
+ *
+ * <p>
+ * The cache is bounded by the total size of its entries, evicting the least
+ * recently used ones (by modification time, which is updated on every hit)
+ * once it is exceeded. Entries are written to a temporary file and moved
+ * into place, so concurrent builds sharing a directory never see a partial
+ * entry; an unreadable entry is deleted and treated as a miss. Sources which
+ * fail to lex or parse are not cached.
+ */
+public final class ParseCache {
+
+    //Identifies the parser and the encoding of entries; change it whenever
+    //either changes the AST produced for a source. Entries are read eagerly
+    //with AstReader, so malformed ones are caught (and deleted) up front.
+    private static final String VERSION = "plc-parser-2";
+    private static final String SUFFIX = ".ast";
+
+    private final Path directory;
+    private final long capacity;
+    private final Touch touch;
+    private final AtomicLong size = new AtomicLong(); //of all entries, approximately
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger evictions = new AtomicInteger();
+
+    /**
+     * Opens (creating if needed) a cache in the given directory, evicting
+     * entries once their total size exceeds capacity bytes.
+     */
+    public ParseCache(Path directory, long capacity) throws IOException {
+        this(directory, capacity, path -> Files.setLastModifiedTime(path, FileTime.from(Instant.now())));
+    }
+
+    /**
+     * Creates a cache which marks an entry as used on a hit with touch
+     * instead of updating its modification time, for tests.
+     */
+    ParseCache(Path directory, long capacity, Touch touch) throws IOException {
+        Preconditions.checkArgument(capacity > 0, capacity);
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.capacity = capacity;
+        this.touch = touch;
+        for (var entry : entries()) {
+            size.addAndGet(entry.size());
+        }
+    }
+
+    public Ast.Source parse(String source) throws LexException, ParseException {
+        return parse(source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Ast.Source parse(Path file) throws IOException, LexException, ParseException {
+        return parse(Files.readAllBytes(file));
+    }
+
+    /**
+     * Returns the AST of the given UTF-8 source, which is only lexed (with a
+     * {@link Utf8Lexer}) and parsed on a miss.
+     */
+    public Ast.Source parse(byte[] source) throws LexException, ParseException {
+        var key = Hashing.murmur3_128().newHasher()
+            .putString(VERSION, StandardCharsets.UTF_8)
+            .putBytes(source)
+            .hash();
+        var path = directory.resolve(key + SUFFIX);
+        var cached = read(path);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        var ast = (Ast.Source) new Parser(new Utf8Lexer(source).lexBuffer()).parse("source");
+        write(path, ast);
+        return ast;
+    }
+
+    public int hits() {
+        return hits.get();
+    }
+
+    public int misses() {
+        return misses.get();
+    }
+
+    public int evictions() {
+        return evictions.get();
+    }
+
+    private Ast.Source read(Path path) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            var source = AstReader.read(bytes);
+            touch(path);
+            return source;
+        } catch (IOException e) {
+            //malformed, so deleted below
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+
+    /**
+     * Marks an entry as used for eviction. Failing to do so (e.g. since it
+     * was evicted concurrently) doesn't affect the entry that was read.
+     */
+    private void touch(Path path) {
+        try {
+            touch.touch(path);
+        } catch (IOException e) {
+            //only affects the order of eviction
+        }
+    }
+
+    private void write(Path path, Ast.Source ast) {
+        var bytes = AstWriter.write(ast);
+        try {
+            var temporary = Files.createTempFile(directory, null, ".tmp");
+            try {
+                Files.write(temporary, bytes);
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (size.addAndGet(bytes.length) > capacity) {
+            evict();
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is down to
+     * three quarters of its capacity, so that eviction isn't needed again
+     * for a while.
+     */
+    private synchronized void evict() {
+        var entries = entries();
+        var total = entries.stream().mapToLong(Entry::size).sum();
+        entries.sort(Comparator.comparing(Entry::used));
+        for (var entry : entries) {
+            if (total <= capacity / 4 * 3) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(entry.path());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            total -= entry.size();
+            evictions.incrementAndGet();
+        }
+        size.set(total);
+    }
+
+    interface Touch {
+        void touch(Path path) throws IOException;
+    }
+
+    private record Entry(Path path, long size, FileTime used) {}
+
+    private ArrayList<Entry> entries() {
+        var entries = new ArrayList<Entry>();
+        try (var paths = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (var path : paths) {
+                try {
+                    entries.add(new Entry(path, Files.size(path), Files.getLastModifiedTime(path)));
+                } catch (NoSuchFileException e) {
+                    //evicted concurrently
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return entries;
+    }
+
+}
@@ -1,13 +1,23 @@
 package plc.project.parser;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.Uninterruptibles;
+import plc.project.lexer.Diagnostic;
 import plc.project.lexer.Token;
+import plc.project.lexer.TokenBuffer;
+import plc.project.lexer.TokenKind;
 
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntUnaryOperator;
 
 /**
  * This style of parser is called <em>recursive descent</em>. Each rule in our
@@ -21,351 +31,436 @@ import java.util.Optional;
  * {@link TokenStream#match} help with traversing the token stream. Instead of
  * emitting tokens, you will instead need to extract the literal value via
  * {@link TokenStream#get} to be added to the relevant AST.
+ *
+ * <p>
+ * Tokens may also be supplied lazily, e.g. from {@code Lexer#tokens()}, in
+ * which case only a small window of lookahead is ever held in memory, or as
+ * a {@link TokenBuffer}, which is read without creating {@link Token}s.
+ * Likewise, {@link #statements()} parses one top-level statement at a time.
  */
 public final class Parser {
 
+    //Binary operators by token kind, from lowest to highest precedence:
+    //logical (AND, OR), comparison, additive, and multiplicative.
+    static final Operator[] OPERATORS = new Operator[TokenKind.COUNT];
+
+    static {
+        Operator.register(Operator.LOGICAL, false, TokenKind.AND, TokenKind.OR);
+        Operator.register(Operator.COMPARISON, false, TokenKind.LESS, TokenKind.LESS_EQUAL,
+            TokenKind.GREATER, TokenKind.GREATER_EQUAL, TokenKind.EQUAL_EQUAL, TokenKind.NOT_EQUAL);
+        Operator.register(Operator.ADDITIVE, false, TokenKind.PLUS, TokenKind.MINUS);
+        Operator.register(Operator.MULTIPLICATIVE, false, TokenKind.STAR, TokenKind.SLASH);
+    }
+
+    //Thrown to unwind to the enclosing statement list when recovering, once
+    //the error is recorded as a diagnostic. It is only ever thrown (and
+    //caught) within the parser, so it carries no useful message or trace.
+    private static final ParseException RECOVERY = new ParseException("Recovering.", Optional.empty());
+
+    //Top-level statements are grouped into chunks of about this many tokens
+    //for parallel parsing.
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    /**
+     * The default maximum nesting depth, see {@link #limitDepth(int)}, which
+     * fits well within the default thread stack size (usually 1 MB).
+     */
+    public static final int DEFAULT_MAX_DEPTH = 500;
+
     private final TokenStream tokens;
+    private final LiteralPool literals = new LiteralPool();
+    private final Grammar<Ast.Stmt, Ast.Expr> grammar;
+    private List<Diagnostic> diagnostics; //null unless recovering
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    private int depth = 0; //of statements and primary expressions being parsed
 
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this(tokens.iterator());
     }
 
-    public Ast parse(String rule) throws ParseException {
-        var ast = switch (rule) {
-            case "source" -> parseSource();
-            case "stmt" -> parseStmt();
-            case "expr" -> parseExpr();
-            default -> throw new AssertionError(rule);
-        };
-        if (tokens.has(0)) {
-            throw new ParseException("Expected end of input.", tokens.getNext());
-        }
-        return ast;
+    public Parser(Iterator<Token> tokens) {
+        this.tokens = new TokenStream(tokens);
+        this.grammar = new Grammar<>(new RecordSink(), null);
     }
 
-    private Ast.Source parseSource() throws ParseException {
-        var statements = new ArrayList<Ast.Stmt>();
-        while (tokens.has(0)) {
-            statements.add(parseStmt());
-        }
-        return new Ast.Source(statements);
+    public Parser(TokenBuffer tokens) {
+        this(tokens, null);
     }
 
-    // pick statement kind by first token
-    private Ast.Stmt parseStmt() throws ParseException {
-        if (tokens.peek("LET")) {
-            return parseLetStmt();
-        } else if (tokens.peek("DEF")) {
-            return parseDefStmt();
-        } else if (tokens.peek("IF")) {
-            return parseIfStmt();
-        } else if (tokens.peek("FOR")) {
-            return parseForStmt();
-        } else if (tokens.peek("RETURN")) {
-            return parseReturnStmt();
-        } else {
-            return parseExpressionOrAssignmentStmt();
-        }
+    /**
+     * Creates a parser which records the span of every AST node it builds in
+     * spans (if non-null), using the token offsets of the buffer.
+     */
+    public Parser(TokenBuffer tokens, Spans spans) {
+        this(new TokenStream(tokens, 0, tokens.size()), spans);
     }
 
-    // let name [= expr] ;
-    private Ast.Stmt parseLetStmt() throws ParseException {
-        // this shouldn't occur, but being safe
-        if (!tokens.match("LET")) {
-            throw new ParseException("Expected 'LET'.", tokens.getNext());
-        }
-        if (!tokens.match(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Expected variable name.", tokens.getNext());
-        }
-        String name = tokens.get(-1).literal();
-
-        // after the equals sign which must come after the variable,
-        // we can just call the expression operator to take care of the rest
-        Optional<Ast.Expr> value = Optional.empty();
-        if (tokens.match("=")) {
-            value = Optional.of(parseExpr());
-        }
-
-        // the line must end in a semi-colon
-        if (!tokens.match(";")) {
-            throw new ParseException("Expected ';'.", tokens.getNext());
-        }
-
-        return new Ast.Stmt.Let(name, value);
+    private Parser(TokenStream tokens, Spans spans) {
+        this.tokens = tokens;
+        this.grammar = new Grammar<>(new RecordSink(), spans);
     }
 
-    // def name ( params ) do body end
-    private Ast.Stmt parseDefStmt() throws ParseException {
-        if (!tokens.match("DEF")) {
-            throw new ParseException("Expected 'DEF'.", tokens.getNext());
-        }
-        if (!tokens.match(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Expected function name.", tokens.getNext());
-        }
-        String name = tokens.get(-1).literal();
-        if (!tokens.match("(")) {
-            throw new ParseException("Expected '('.", tokens.getNext());
+    /**
+     * Parses the tokens [from, to) of the buffer as a sequence of whole
+     * statements, which is used by {@link Reparser} to reparse part of a
+     * block. Like a block, this stops at an {@code END} or {@code ELSE},
+     * returning null unless it's at the end of the range (since the block
+     * containing the range would have ended there instead). The statements
+     * are nested within depth enclosing statements and primary expressions,
+     * which count towards maxDepth as they would in a full parse.
+     */
+    static List<Ast.Stmt> parseStatements(TokenBuffer tokens, int from, int to, Spans spans, int depth, int maxDepth) throws ParseException {
+        var parser = new Parser(new TokenStream(tokens, from, to), spans).limitDepth(maxDepth);
+        parser.depth = depth;
+        var statements = new ArrayList<Ast.Stmt>();
+        while (parser.tokens.has(0) && !parser.tokens.peek(TokenKind.END) && !parser.tokens.peek(TokenKind.ELSE)) {
+            statements.add(parser.grammar.parseStmt());
         }
+        return parser.tokens.has(0) ? null : statements;
+    }
 
-        List<String> parameters = new ArrayList<>();
-        if (!tokens.peek(")")) {
-            do {
-                if (!tokens.match(Token.Type.IDENTIFIER)) {
-                    throw new ParseException("Expected parameter name.", tokens.getNext());
-                }
-                parameters.add(tokens.get(-1).literal());
-            } while (tokens.match(","));
-        }
-        if (!tokens.match(")")) {
-            throw new ParseException("Expected ')'.", tokens.getNext());
-        }
-        if (!tokens.match("DO")) {
-            throw new ParseException("Expected 'DO'.", tokens.getNext());
-        }
-        List<Ast.Stmt> body = new ArrayList<>();
-        while (!tokens.peek("END")) {
-            body.add(parseStmt());
-        }
+    /**
+     * Equivalent to {@code new Parser(tokens).parse("source")}, but parses
+     * runs of top-level statements concurrently on the given pool and
+     * concatenates their statements.
+     *
+     * <p>
+     * Statement boundaries are found by a linear scan over token kinds: a
+     * {@code DEF}, {@code IF}, or {@code FOR} statement ends at the
+     * {@code END} closing its own {@code DO}, and any other statement ends at
+     * the first {@code ;} outside of an {@code OBJECT DO ... END}. Every
+     * statement ends by matching its last token, so the parser never looks
+     * past it and a range of whole statements parses exactly as it would in
+     * sequence. If the scan is confused by malformed input, some range fails
+     * to parse; any failure falls back to the sequential parse, so the
+     * {@link ParseException} is always the first in source order.
+     */
+    public static Ast.Source parseParallel(TokenBuffer tokens, ForkJoinPool pool) throws ParseException {
+        return parseParallel(tokens, pool, DEFAULT_MAX_DEPTH);
+    }
 
-        if (!tokens.match("END")) {
-            throw new ParseException("Expected 'END'.", tokens.getNext());
-        }
+    /**
+     * Equivalent to {@link #parseParallel(TokenBuffer, ForkJoinPool)} with
+     * the given maximum nesting depth, see {@link #limitDepth(int)}.
+     */
+    public static Ast.Source parseParallel(TokenBuffer tokens, ForkJoinPool pool, int maxDepth) throws ParseException {
+        return parseParallel(tokens, pool, maxDepth, CHUNK_SIZE);
+    }
 
-        return new Ast.Stmt.Def(name, parameters, body);
+    static Ast.Source parseParallel(TokenBuffer tokens, ForkJoinPool pool, int maxDepth, int chunkSize) throws ParseException {
+        Preconditions.checkArgument(maxDepth > 0, maxDepth);
+        var boundaries = boundaries(tokens.size(), tokens::kind, chunkSize);
+        var chunks = new ArrayList<Chunk>();
+        for (int i = 0; i + 1 < boundaries.size(); i++) {
+            var range = new TokenStream(tokens, boundaries.get(i), boundaries.get(i + 1));
+            chunks.add(new Chunk(new Parser(range, null).limitDepth(maxDepth)));
+        }
+        var source = join(chunks, pool);
+        return source != null ? source : (Ast.Source) new Parser(tokens).limitDepth(maxDepth).parse("source");
     }
 
-    // if expr do then [else else] end
-    private Ast.Stmt parseIfStmt() throws ParseException {
-        if (!tokens.match("IF")) {
-            throw new ParseException("Expected 'IF'.", tokens.getNext());
-        }
+    /**
+     * Equivalent to {@link #parseParallel(TokenBuffer, ForkJoinPool)} for a
+     * list of tokens, which should support fast random access.
+     */
+    public static Ast.Source parseParallel(List<Token> tokens, ForkJoinPool pool) throws ParseException {
+        return parseParallel(tokens, pool, DEFAULT_MAX_DEPTH);
+    }
 
-        Ast.Expr condition = parseExpr();
+    /**
+     * Equivalent to {@link #parseParallel(TokenBuffer, ForkJoinPool, int)}
+     * for a list of tokens, which should support fast random access.
+     */
+    public static Ast.Source parseParallel(List<Token> tokens, ForkJoinPool pool, int maxDepth) throws ParseException {
+        return parseParallel(tokens, pool, maxDepth, CHUNK_SIZE);
+    }
 
-        if (!tokens.match("DO")) {
-            throw new ParseException("Expected 'DO'.", tokens.getNext());
-        }
-        List<Ast.Stmt> thenStmts = new ArrayList<>();
-        while (!tokens.peek("END") && !tokens.peek("ELSE")) {
-            thenStmts.add(parseStmt());
-        }
+    static Ast.Source parseParallel(List<Token> tokens, ForkJoinPool pool, int maxDepth, int chunkSize) throws ParseException {
+        Preconditions.checkArgument(maxDepth > 0, maxDepth);
+        var boundaries = boundaries(tokens.size(), i -> TokenKind.of(tokens.get(i)), chunkSize);
+        var chunks = new ArrayList<Chunk>();
+        for (int i = 0; i + 1 < boundaries.size(); i++) {
+            chunks.add(new Chunk(new Parser(tokens.subList(boundaries.get(i), boundaries.get(i + 1))).limitDepth(maxDepth)));
+        }
+        var source = join(chunks, pool);
+        return source != null ? source : (Ast.Source) new Parser(tokens).limitDepth(maxDepth).parse("source");
+    }
 
-        List<Ast.Stmt> elseStmts = new ArrayList<>();
-        if (tokens.match("ELSE")) {
-            while (!tokens.peek("END")) {
-                elseStmts.add(parseStmt());
+    /**
+     * Returns the indices splitting [0, size) into ranges of whole top-level
+     * statements, each at least chunkSize tokens (except the last).
+     */
+    private static List<Integer> boundaries(int size, IntUnaryOperator kinds, int chunkSize) {
+        var boundaries = new ArrayList<Integer>();
+        boundaries.add(0);
+        var start = 0;
+        var block = false; //whether the current statement is DEF/IF/FOR
+        var opened = false; //whether its own DO has been seen
+        var depth = 0;
+        for (int i = 0; i < size; i++) {
+            var kind = kinds.applyAsInt(i);
+            if (i == start) {
+                block = kind == TokenKind.DEF || kind == TokenKind.IF || kind == TokenKind.FOR;
+                opened = false;
+                depth = 0;
+            }
+            var end = false;
+            if (kind == TokenKind.OBJECT && i + 1 < size && kinds.applyAsInt(i + 1) == TokenKind.DO) {
+                depth++;
+                i++;
+            } else if (kind == TokenKind.DO) {
+                opened |= depth == 0;
+                depth++;
+            } else if (kind == TokenKind.END) {
+                depth--;
+                end = block && opened && depth == 0;
+            } else if (kind == TokenKind.SEMICOLON) {
+                end = !block && depth == 0;
+            }
+            if (end) {
+                start = i + 1;
+                if (start - boundaries.get(boundaries.size() - 1) >= chunkSize) {
+                    boundaries.add(start);
+                }
             }
         }
-        // single end closes if or else
-        if (!tokens.match("END")) {
-            throw new ParseException("Expected 'END'.", tokens.getNext());
+        if (boundaries.get(boundaries.size() - 1) < size) {
+            boundaries.add(size);
         }
-
-        return new Ast.Stmt.If(condition, thenStmts, elseStmts);
+        return boundaries;
     }
 
-    // for name in expr do body end
-    private Ast.Stmt parseForStmt() throws ParseException {
-        if (!tokens.match("FOR")) {
-            throw new ParseException("Expected 'FOR'.", tokens.getNext());
-        }
-        if (!tokens.match(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Expected loop variable name.", tokens.getNext());
-        }
-        String name = tokens.get(-1).literal();
-
-        if (!tokens.match("IN")) {
-            throw new ParseException("Expected 'IN'.", tokens.getNext());
-        }
-
-        Ast.Expr iterable = parseExpr();
-
-        if (!tokens.match("DO")) {
-            throw new ParseException("Expected 'DO'.", tokens.getNext());
-        }
-
-        List<Ast.Stmt> body = new ArrayList<>();
-        while (!tokens.peek("END")) {
-            body.add(parseStmt());
-        }
-
-        if (!tokens.match("END")) {
-            throw new ParseException("Expected 'END'.", tokens.getNext());
+    /**
+     * Parses the chunks on the pool and concatenates their statements, or
+     * returns null if any chunk failed.
+     */
+    private static Ast.Source join(List<Chunk> chunks, ForkJoinPool pool) {
+        chunks.forEach(pool::execute);
+        var statements = new ArrayList<Ast.Stmt>();
+        for (var chunk : chunks) {
+            var result = chunk.join();
+            if (chunk.failed) {
+                chunks.forEach(c -> c.cancel(false));
+                return null;
+            }
+            statements.addAll(result);
         }
-
-        return new Ast.Stmt.For(name, iterable, body);
+        return new Ast.Source(statements);
     }
 
-    // return [expr] ; or return if expr ;
-    private Ast.Stmt parseReturnStmt() throws ParseException {
-        if (!tokens.match("RETURN")) {
-            throw new ParseException("Expected 'RETURN'.", tokens.getNext());
-        }
-        // return if cond ; -> if cond do return ; end
-        if (tokens.match("IF")) {
-            Ast.Expr condition = parseExpr();
-            if (!tokens.match(";")) {
-                throw new ParseException("Expected ';'.", tokens.getNext());
-            }
-            return new Ast.Stmt.If(condition, List.of(new Ast.Stmt.Return(Optional.empty())), List.of());
-        }
+    /**
+     * Sets the maximum nesting depth, which counts each enclosing statement
+     * and primary expression (e.g. a group, call, or object), and returns
+     * this parser. Every recursive rule passes through one of them, so
+     * deeper input fails with a {@link ParseException} instead of
+     * overflowing the stack. The limit applies to every kind of parse,
+     * including {@link #parseArena()} and recovering (where the statement is
+     * skipped like any other error). Static parses which create their own
+     * parsers take the limit as an argument instead, e.g.
+     * {@link #parseParallel(TokenBuffer, ForkJoinPool, int)} and
+     * {@link Reparser}.
+     */
+    public Parser limitDepth(int maxDepth) {
+        Preconditions.checkArgument(maxDepth > 0, maxDepth);
+        this.maxDepth = maxDepth;
+        return this;
+    }
 
-        Optional<Ast.Expr> value = Optional.empty();
-        if (!tokens.peek(";")) {
-            value = Optional.of(parseExpr());
+    public Ast parse(String rule) throws ParseException {
+        var ast = switch (rule) {
+            case "source" -> parseSource();
+            case "stmt" -> grammar.parseStmt();
+            case "expr" -> grammar.parseExpr();
+            default -> throw new AssertionError(rule);
+        };
+        if (tokens.has(0)) {
+            throw error("Expected end of input.");
         }
+        return ast;
+    }
 
-        if (!tokens.match(";")) {
-            throw new ParseException("Expected ';'.", tokens.getNext());
+    /**
+     * Equivalent to {@link #parse(String)}, but parses on a new thread with
+     * the given stack size (in bytes), blocking until it completes. This
+     * allows nesting deeper than the caller's stack would support, in
+     * combination with a larger {@link #limitDepth(int)}; each level of
+     * nesting takes up to about 1 KB of stack.
+     */
+    public Ast parse(String rule, long stackSize) throws ParseException {
+        Preconditions.checkArgument(stackSize > 0, stackSize);
+        var task = new FutureTask<>(() -> parse(rule));
+        new Thread(null, task, "parser", stackSize).start();
+        try {
+            return Uninterruptibles.getUninterruptibly(task);
+        } catch (ExecutionException e) {
+            Throwables.throwIfInstanceOf(e.getCause(), ParseException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new AssertionError(e.getCause());
         }
-
-        return new Ast.Stmt.Return(value);
     }
 
-    // expr ; or left = value ;
-    private Ast.Stmt parseExpressionOrAssignmentStmt() throws ParseException {
-        Ast.Expr left = parseExpr();
-        if (tokens.match("=")) {
-            Ast.Expr value = parseExpr();
-            if (!tokens.match(";")) {
-                throw new ParseException("Expected ';'.", tokens.getNext());
+    /**
+     * Parses a source, recovering from errors instead of throwing a
+     * {@link ParseException}: each error is added to diagnostics (at the
+     * offset of the token where it occurred) and the statement containing
+     * it is skipped up to the next statement boundary, so that every error
+     * in the source is found in a single pass. Statements with errors are
+     * left out of their enclosing block. This requires the parser to be
+     * created from a {@link TokenBuffer}.
+     *
+     * <p>
+     * A statement is skipped through the first {@code ;} outside of a nested
+     * {@code DO ... END}, or for a {@code DEF}, {@code IF}, or {@code FOR}
+     * through the {@code END} closing its own {@code DO}, and skipping stops
+     * early at a statement keyword, {@code ELSE}, or {@code END} which can't
+     * belong to the statement.
+     */
+    public Ast.Source parseRecovering(List<Diagnostic> diagnostics) {
+        Preconditions.checkState(tokens.buffer != null, "Parser input is not a TokenBuffer.");
+        this.diagnostics = diagnostics;
+        var statements = new ArrayList<Ast.Stmt>();
+        try {
+            while (tokens.has(0)) {
+                grammar.parseStmt(statements);
             }
-            return new Ast.Stmt.Assignment(left, value);
+        } catch (ParseException e) {
+            //rethrown at the end of input, which ends the source anyway
         }
-        if (!tokens.match(";")) {
-            throw new ParseException("Expected ';'.", tokens.getNext());
-        }
-
-        return new Ast.Stmt.Expression(left);
-    }
-
-    // entry for expressions (starts at logical, delegates down)
-    private Ast.Expr parseExpr() throws ParseException {
-        return parseLogicalExpr();
-    }
-
-    // logical level (placeholder, goes to comparison)
-    private Ast.Expr parseLogicalExpr() throws ParseException {
-        return parseComparisonExpr();
+        return new Ast.Source(statements);
     }
 
-    // comparison level (placeholder, goes to additive)
-    private Ast.Expr parseComparisonExpr() throws ParseException {
-        return parseAdditiveExpr();
+    /**
+     * Parses a source into an {@link AstArena} rather than {@link Ast}
+     * records, which is far more compact for large sources. The arena is
+     * built by the same grammar through an {@link ArenaSink}, so the tree of
+     * records is never held in memory (unlike {@link AstArena#of}), but spans
+     * and recovery aren't supported. Since nodes are boxed and collected into
+     * lists before being appended, this is somewhat slower than
+     * {@link #parse(String)}.
+     */
+    public AstArena parseArena() throws ParseException {
+        var sink = new ArenaSink(literals);
+        var grammar = new Grammar<>(sink, null);
+        while (tokens.has(0)) {
+            sink.statement(grammar.parseStmt());
+        }
+        return sink.build();
     }
 
-    // + and - (left-assoc, lower precedence than * /)
-    private Ast.Expr parseAdditiveExpr() throws ParseException {
-        Ast.Expr left = parseMultiplicativeExpr();
-        while (true) {
-            if (tokens.match("+")) {
-                left = new Ast.Expr.Binary("+", left, parseMultiplicativeExpr());
-            } else if (tokens.match("-")) {
-                left = new Ast.Expr.Binary("-", left, parseMultiplicativeExpr());
-            } else {
-                break;
+    /**
+     * Returns a lazy iterator over the top-level statements of a source,
+     * parsing each statement only when it is requested. Combined with a lazy
+     * token source (e.g. {@code Lexer#tokens()}), only the statement being
+     * parsed is ever held in memory, so statements can be processed and
+     * discarded as they arrive. Since {@link Iterator} cannot throw checked
+     * exceptions, a {@link ParseException} is wrapped in an
+     * {@link UncheckedParseException}.
+     */
+    public Iterator<Ast.Stmt> statements() {
+        return new AbstractIterator<>() {
+            @Override
+            protected Ast.Stmt computeNext() {
+                if (!tokens.has(0)) {
+                    return endOfData();
+                }
+                try {
+                    return grammar.parseStmt();
+                } catch (ParseException e) {
+                    throw new UncheckedParseException(e);
+                }
             }
-        }
-        return left;
+        };
     }
 
-    // * and / (left-assoc, higher precedence than + -)
-    private Ast.Expr parseMultiplicativeExpr() throws ParseException {
-        Ast.Expr left = parseSecondaryExpr();
-        // chain * / left to right
-        while (true) {
-            if (tokens.match("*")) {
-                left = new Ast.Expr.Binary("*", left, parseSecondaryExpr());
-            } else if (tokens.match("/")) {
-                left = new Ast.Expr.Binary("/", left, parseSecondaryExpr());
-            } else {
-                break;
-            }
-        }
-        return left;
+    /**
+     * Returns the offset of the next token, or the end of the last token if
+     * there are none, e.g. to locate a {@link ParseException} (which only has
+     * the token). This requires the parser to be created from a
+     * {@link TokenBuffer}.
+     */
+    public int offset() {
+        return tokens.offset();
     }
 
-    // primary then . name or . name ( args )
-    private Ast.Expr parseSecondaryExpr() throws ParseException {
-        Ast.Expr left = parsePrimaryExpr();
-        while (tokens.peek(".")) {
-            left = parsePropertyOrMethod(left);
+    private Ast.Source parseSource() throws ParseException {
+        var start = tokens.position();
+        var statements = new ArrayList<Ast.Stmt>();
+        while (tokens.has(0)) {
+            statements.add(grammar.parseStmt());
         }
-        return left;
+        return grammar.span(start, new Ast.Source(statements));
     }
 
-    // . name or . name ( args )
-    private Ast.Expr parsePropertyOrMethod(Ast.Expr receiver) throws ParseException {
-        if (!tokens.match(".")) {
-            throw new ParseException("Expected '.'.", tokens.getNext());
-        }
-        if (!tokens.match(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Expected property or method name.", tokens.getNext());
-        }
-        String name = tokens.get(-1).literal();
-        if (tokens.match("(")) {
-            List<Ast.Expr> arguments = new ArrayList<>();
-            if (!tokens.peek(")")) {
-                do {
-                    arguments.add(parseExpr());
-                } while (tokens.match(","));
+    /**
+     * Skips the rest of the statement starting at the start position after
+     * an error (see {@link #parseRecovering(List)}), always skipping at
+     * least one token.
+     */
+    private void synchronize(int start) {
+        var first = tokens.kind(start - tokens.position());
+        var closed = first == TokenKind.DEF || first == TokenKind.IF || first == TokenKind.FOR
+            ? TokenKind.END : TokenKind.SEMICOLON; //the statement's last token
+        var depth = 0;
+        for (int i = start; i < tokens.position(); i++) {
+            depth += switch (tokens.kind(i - tokens.position())) {
+                case TokenKind.DO -> 1;
+                case TokenKind.END -> depth > 0 ? -1 : 0;
+                default -> 0;
+            };
+        }
+        var skipped = tokens.position() > start;
+        while (tokens.has(0)) {
+            var kind = tokens.kind(0);
+            var boundary = switch (kind) {
+                case TokenKind.LET, TokenKind.DEF, TokenKind.IF, TokenKind.FOR, TokenKind.RETURN,
+                     TokenKind.ELSE, TokenKind.END -> depth == 0;
+                default -> false;
+            };
+            if (boundary && skipped) {
+                return;
             }
-            if (!tokens.match(")")) {
-                throw new ParseException("Expected ')'.", tokens.getNext());
+            tokens.match(kind);
+            skipped = true;
+            if (kind == TokenKind.DO) {
+                depth++;
+            } else if (kind == TokenKind.END && depth > 0) {
+                depth--;
+                if (depth == 0 && closed == TokenKind.END) {
+                    return;
+                }
+            } else if (boundary || kind == TokenKind.SEMICOLON && depth == 0 && closed == TokenKind.SEMICOLON) {
+                return; //a stray END/ELSE, or the end of the statement
             }
-            return new Ast.Expr.Method(receiver, name, arguments);
         }
-        return new Ast.Expr.Property(receiver, name);
     }
 
-    // literal, group, object, or variable/function (try in order)
-    private Ast.Expr parsePrimaryExpr() throws ParseException {
-        if (tokens.peek("NIL") || tokens.peek("TRUE") || tokens.peek("FALSE") ||
-                tokens.peek(Token.Type.INTEGER) || tokens.peek(Token.Type.DECIMAL) ||
-                tokens.peek(Token.Type.CHARACTER) || tokens.peek(Token.Type.STRING)) {
-            return parseLiteralExprValue();
-        }
-        if (tokens.peek("(")) {
-            return parseGroupExpr();
-        }
-        if (tokens.peek("OBJECT")) {
-            return parseObjectExpr();
-        }
-        return parseVariableOrFunctionExpr();
+    /**
+     * Returns the exception for an error at the next token. When recovering,
+     * the error is recorded as a diagnostic instead, and the returned
+     * {@link #RECOVERY} unwinds to the enclosing statement list without
+     * creating an exception or the next token.
+     */
+    private ParseException error(String message) {
+        if (diagnostics == null) {
+            return new ParseException(message, tokens.getNext());
+        }
+        diagnostics.add(new Diagnostic(message, tokens.offset()));
+        return RECOVERY;
     }
 
-    // nil, true/false, integer, decimal, char, string
-    private Ast.Expr parseLiteralExprValue() throws ParseException {
-        if (tokens.match("NIL")) {
-            return new Ast.Expr.Literal(null);
-        }
-        if (tokens.match("TRUE")) {
-            return new Ast.Expr.Literal(true);
-        }
-        if (tokens.match("FALSE")) {
-            return new Ast.Expr.Literal(false);
-        }
-        if (tokens.match(Token.Type.INTEGER)) {
-            return new Ast.Expr.Literal(new BigInteger(tokens.get(-1).literal()));
-        }
-        if (tokens.match(Token.Type.DECIMAL)) {
-            return new Ast.Expr.Literal(new BigDecimal(tokens.get(-1).literal()));
-        }
-        if (tokens.match(Token.Type.CHARACTER)) {
-            String lit = tokens.get(-1).literal();
-            char c = parseCharacterLiteral(lit);
-            return new Ast.Expr.Literal(c);
-        }
-        if (tokens.match(Token.Type.STRING)) {
-            String lit = tokens.get(-1).literal();
-            String s = parseStringLiteral(lit);
-            return new Ast.Expr.Literal(s);
+    /**
+     * Enters a statement or primary expression, which must be followed by
+     * {@code depth--} once it is parsed, failing if this exceeds the maximum
+     * depth.
+     */
+    private void enter() throws ParseException {
+        if (++depth > maxDepth) {
+            throw error("Maximum nesting depth exceeded.");
         }
-        throw new ParseException("Expected literal.", tokens.getNext());
     }
 
     // strip quotes, handle \n \t \' \\ etc
-    private static char parseCharacterLiteral(String lit) {
+    static char parseCharacterLiteral(String lit) {
         if (lit.length() >= 2 && lit.charAt(0) == '\'' && lit.charAt(lit.length() - 1) == '\'') {
             String inner = lit.substring(1, lit.length() - 1);
             if (inner.length() == 1)
@@ -385,7 +480,7 @@ public final class Parser {
     }
 
     // unescape "..." with \\n etc
-    private static String parseStringLiteral(String lit) {
+    static String parseStringLiteral(String lit) {
         if (lit.length() >= 2 && lit.charAt(0) == '"' && lit.charAt(lit.length() - 1) == '"') {
             StringBuilder sb = new StringBuilder();
             for (int i = 1; i < lit.length() - 1; i++) {
@@ -407,87 +502,614 @@ public final class Parser {
         return lit;
     }
 
-    // parenthesized expression ( expr )
-    private Ast.Expr parseGroupExpr() throws ParseException {
-        if (!tokens.match("(")) {
-            throw new ParseException("Expected '('.", tokens.getNext());
+    /**
+     * The rules of the grammar, which build their nodes through a
+     * {@link NodeSink} so that the same rules produce both {@link Ast}
+     * records and an {@link AstArena}, where S and E are the types of
+     * statement and expression nodes. Spans are only recorded for records.
+     */
+    private final class Grammar<S, E> {
+
+        private final NodeSink<S, E> sink;
+        private final Spans spans; //null unless recording spans
+
+        private Grammar(NodeSink<S, E> sink, Spans spans) {
+            this.sink = sink;
+            this.spans = spans;
         }
-        if (tokens.peek(")")) {
-            throw new ParseException("Expected expression.", tokens.getNext());
+
+        // pick statement kind by first token
+        private S parseStmt() throws ParseException {
+            var start = tokens.position();
+            enter();
+            var stmt = switch (tokens.kind(0)) {
+                case TokenKind.LET -> parseLetStmt();
+                case TokenKind.DEF -> parseDefStmt();
+                case TokenKind.IF -> parseIfStmt();
+                case TokenKind.FOR -> parseForStmt();
+                case TokenKind.RETURN -> parseReturnStmt();
+                default -> parseExpressionOrAssignmentStmt();
+            };
+            depth--;
+            return span(start, stmt);
         }
-        Ast.Expr expr = parseExpr();
-        if (!tokens.match(")")) {
-            throw new ParseException("Expected ')'.", tokens.getNext());
+
+        /**
+         * Parses a statement into statements. When recovering, a statement with
+         * an error is instead skipped by {@link #synchronize(int)}, unless the
+         * error is at the end of input, where nothing more can be parsed.
+         */
+        private void parseStmt(List<S> statements) throws ParseException {
+            if (diagnostics == null) {
+                statements.add(parseStmt());
+                return;
+            }
+            var start = tokens.position();
+            var depth = Parser.this.depth;
+            try {
+                statements.add(parseStmt());
+            } catch (ParseException e) {
+                if (!tokens.has(0)) {
+                    throw e;
+                }
+                Parser.this.depth = depth; //left incremented by the rules which failed
+                synchronize(start);
+            }
+        }
+
+        /**
+         * Records the span of node, which was parsed from the token at the start
+         * position up to the previous token, if recording spans (which are only
+         * recorded for {@link Ast} nodes). A node without any tokens (i.e. an
+         * empty source) has an empty span at the current offset.
+         */
+        private <T> T span(int start, T node) {
+            if (spans != null) {
+                if (tokens.position() == start) {
+                    spans.put((Ast) node, tokens.offset(), tokens.offset());
+                } else {
+                    spans.put((Ast) node, tokens.start(start), tokens.end(tokens.position() - 1));
+                }
+            }
+            return node;
+        }
+
+        // let name [= expr] ;
+        private S parseLetStmt() throws ParseException {
+            // this shouldn't occur, but being safe
+            if (!tokens.match(TokenKind.LET)) {
+                throw error("Expected 'LET'.");
+            }
+            if (!tokens.match(Token.Type.IDENTIFIER)) {
+                throw error("Expected variable name.");
+            }
+            String name = tokens.literal(-1);
+
+            // after the equals sign which must come after the variable,
+            // we can just call the expression operator to take care of the rest
+            E value = null;
+            if (tokens.match(TokenKind.EQUALS)) {
+                value = parseExpr();
+            }
+
+            // the line must end in a semi-colon
+            if (!tokens.match(TokenKind.SEMICOLON)) {
+                throw error("Expected ';'.");
+            }
+
+            return sink.letStmt(name, value);
+        }
+
+        // def name ( params ) do body end
+        private S parseDefStmt() throws ParseException {
+            if (!tokens.match(TokenKind.DEF)) {
+                throw error("Expected 'DEF'.");
+            }
+            if (!tokens.match(Token.Type.IDENTIFIER)) {
+                throw error("Expected function name.");
+            }
+            String name = tokens.literal(-1);
+            if (!tokens.match(TokenKind.LEFT_PAREN)) {
+                throw error("Expected '('.");
+            }
+
+            List<String> parameters = new ArrayList<>();
+            if (!tokens.peek(TokenKind.RIGHT_PAREN)) {
+                do {
+                    if (!tokens.match(Token.Type.IDENTIFIER)) {
+                        throw error("Expected parameter name.");
+                    }
+                    parameters.add(tokens.literal(-1));
+                } while (tokens.match(TokenKind.COMMA));
+            }
+            if (!tokens.match(TokenKind.RIGHT_PAREN)) {
+                throw error("Expected ')'.");
+            }
+            if (!tokens.match(TokenKind.DO)) {
+                throw error("Expected 'DO'.");
+            }
+            List<S> body = new ArrayList<>();
+            while (!tokens.peek(TokenKind.END)) {
+                parseStmt(body);
+            }
+
+            if (!tokens.match(TokenKind.END)) {
+                throw error("Expected 'END'.");
+            }
+
+            return sink.defStmt(name, parameters, body);
+        }
+
+        // if expr do then [else else] end
+        private S parseIfStmt() throws ParseException {
+            if (!tokens.match(TokenKind.IF)) {
+                throw error("Expected 'IF'.");
+            }
+
+            E condition = parseExpr();
+
+            if (!tokens.match(TokenKind.DO)) {
+                throw error("Expected 'DO'.");
+            }
+            List<S> thenStmts = new ArrayList<>();
+            while (!tokens.peek(TokenKind.END) && !tokens.peek(TokenKind.ELSE)) {
+                parseStmt(thenStmts);
+            }
+
+            List<S> elseStmts = new ArrayList<>();
+            if (tokens.match(TokenKind.ELSE)) {
+                while (!tokens.peek(TokenKind.END)) {
+                    parseStmt(elseStmts);
+                }
+            }
+            // single end closes if or else
+            if (!tokens.match(TokenKind.END)) {
+                throw error("Expected 'END'.");
+            }
+
+            return sink.ifStmt(condition, thenStmts, elseStmts);
         }
-        return new Ast.Expr.Group(expr);
-    }
 
-    // object do let/def ... end (fields and methods)
-    private Ast.Expr parseObjectExpr() throws ParseException {
-        if (!tokens.match("OBJECT")) {
-            throw new ParseException("Expected 'OBJECT'.", tokens.getNext());
+        // for name in expr do body end
+        private S parseForStmt() throws ParseException {
+            if (!tokens.match(TokenKind.FOR)) {
+                throw error("Expected 'FOR'.");
+            }
+            if (!tokens.match(Token.Type.IDENTIFIER)) {
+                throw error("Expected loop variable name.");
+            }
+            String name = tokens.literal(-1);
+
+            if (!tokens.match(TokenKind.IN)) {
+                throw error("Expected 'IN'.");
+            }
+
+            E iterable = parseExpr();
+
+            if (!tokens.match(TokenKind.DO)) {
+                throw error("Expected 'DO'.");
+            }
+
+            List<S> body = new ArrayList<>();
+            while (!tokens.peek(TokenKind.END)) {
+                parseStmt(body);
+            }
+
+            if (!tokens.match(TokenKind.END)) {
+                throw error("Expected 'END'.");
+            }
+
+            return sink.forStmt(name, iterable, body);
         }
-        if (!tokens.match("DO")) {
-            throw new ParseException("Expected 'DO'.", tokens.getNext());
+
+        // return [expr] ; or return if expr ;
+        private S parseReturnStmt() throws ParseException {
+            if (!tokens.match(TokenKind.RETURN)) {
+                throw error("Expected 'RETURN'.");
+            }
+            // return if cond ; -> if cond do return ; end
+            if (tokens.match(TokenKind.IF)) {
+                E condition = parseExpr();
+                if (!tokens.match(TokenKind.SEMICOLON)) {
+                    throw error("Expected ';'.");
+                }
+                return sink.ifStmt(condition, List.of(sink.returnStmt(null)), List.of());
+            }
+
+            E value = null;
+            if (!tokens.peek(TokenKind.SEMICOLON)) {
+                value = parseExpr();
+            }
+
+            if (!tokens.match(TokenKind.SEMICOLON)) {
+                throw error("Expected ';'.");
+            }
+
+            return sink.returnStmt(value);
         }
-        List<Ast.Stmt.Let> fields = new ArrayList<>();
-        List<Ast.Stmt.Def> methods = new ArrayList<>();
-        while (!tokens.peek("END")) {
-            if (tokens.peek("LET")) {
-                // field
-                Ast.Stmt let = parseLetStmt();
-                if (let instanceof Ast.Stmt.Let letStmt) {
-                    fields.add(letStmt);
+
+        // expr ; or left = value ;
+        private S parseExpressionOrAssignmentStmt() throws ParseException {
+            E left = parseExpr();
+            if (tokens.match(TokenKind.EQUALS)) {
+                E value = parseExpr();
+                if (!tokens.match(TokenKind.SEMICOLON)) {
+                    throw error("Expected ';'.");
                 }
-            } else if (tokens.peek("DEF")) {
-                // method
-                methods.add((Ast.Stmt.Def) parseDefStmt());
-            } else {
-                throw new ParseException("Expected field or method in object.", tokens.getNext());
+                return sink.assignmentStmt(left, value);
+            }
+            if (!tokens.match(TokenKind.SEMICOLON)) {
+                throw error("Expected ';'.");
             }
+
+            return sink.expressionStmt(left);
         }
-        if (!tokens.match("END")) {
-            throw new ParseException("Expected 'END'.", tokens.getNext());
+
+        // entry for expressions (binary operators, lowest precedence first)
+        private E parseExpr() throws ParseException {
+            return parseBinaryExpr(Operator.LOGICAL);
         }
-        return new Ast.Expr.ObjectExpr(Optional.empty(), fields, methods);
-    }
 
-    // identifier -> variable ; identifier ( args ) -> function call
-    private Ast.Expr parseVariableOrFunctionExpr() throws ParseException {
-        if (!tokens.match(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Expected variable or function.", tokens.getNext());
+        /**
+         * Parses an operand followed by any binary operators with at least the
+         * given precedence (precedence climbing). Each operator's right operand
+         * only takes operators binding tighter than it (or equally tightly, if it
+         * is right-associative), so an operand costs one call and one table
+         * lookup rather than a call and failed match per precedence level.
+         */
+        private E parseBinaryExpr(int precedence) throws ParseException {
+            var start = tokens.position();
+            E left = parseSecondaryExpr();
+            while (true) {
+                var kind = tokens.kind(0);
+                var operator = kind >= 0 ? OPERATORS[kind] : null;
+                if (operator == null || operator.precedence() < precedence) {
+                    return left;
+                }
+                tokens.match(kind);
+                var right = parseBinaryExpr(operator.rightAssociative() ? operator.precedence() : operator.precedence() + 1);
+                left = span(start, sink.binaryExpr(operator.literal(), left, right));
+            }
         }
-        String name = tokens.get(-1).literal();
-        if (tokens.match("(")) {
-            List<Ast.Expr> arguments = new ArrayList<>();
-            if (!tokens.peek(")")) {
-                do {
-                    arguments.add(parseExpr());
-                } while (tokens.match(","));
+
+        // primary then . name or . name ( args )
+        private E parseSecondaryExpr() throws ParseException {
+            var start = tokens.position();
+            E left = parsePrimaryExpr();
+            while (tokens.peek(TokenKind.DOT)) {
+                left = span(start, parsePropertyOrMethod(left));
             }
-            if (!tokens.match(")")) {
-                throw new ParseException("Expected ')'.", tokens.getNext());
+            return left;
+        }
+
+        // . name or . name ( args )
+        private E parsePropertyOrMethod(E receiver) throws ParseException {
+            if (!tokens.match(TokenKind.DOT)) {
+                throw error("Expected '.'.");
+            }
+            if (!tokens.match(Token.Type.IDENTIFIER)) {
+                throw error("Expected property or method name.");
+            }
+            String name = tokens.literal(-1);
+            if (tokens.match(TokenKind.LEFT_PAREN)) {
+                List<E> arguments = new ArrayList<>();
+                if (!tokens.peek(TokenKind.RIGHT_PAREN)) {
+                    do {
+                        arguments.add(parseExpr());
+                    } while (tokens.match(TokenKind.COMMA));
+                }
+                if (!tokens.match(TokenKind.RIGHT_PAREN)) {
+                    throw error("Expected ')'.");
+                }
+                return sink.methodExpr(receiver, name, arguments);
             }
+            return sink.propertyExpr(receiver, name);
+        }
+
+        // literal, group, object, or variable/function (try in order)
+        private E parsePrimaryExpr() throws ParseException {
+            var start = tokens.position();
+            enter();
+            var expr = switch (tokens.kind(0)) {
+                case TokenKind.NIL, TokenKind.TRUE, TokenKind.FALSE,
+                     TokenKind.INTEGER, TokenKind.DECIMAL, TokenKind.CHARACTER, TokenKind.STRING -> parseLiteralExprValue();
+                case TokenKind.LEFT_PAREN -> parseGroupExpr();
+                case TokenKind.OBJECT -> parseObjectExpr();
+                default -> parseVariableOrFunctionExpr();
+            };
+            depth--;
+            return span(start, expr);
+        }
+
+        // nil, true/false, integer, decimal, char, string
+        private E parseLiteralExprValue() throws ParseException {
+            if (tokens.match(TokenKind.NIL)) {
+                return sink.literalExpr(null);
+            }
+            if (tokens.match(TokenKind.TRUE)) {
+                return sink.literalExpr(true);
+            }
+            if (tokens.match(TokenKind.FALSE)) {
+                return sink.literalExpr(false);
+            }
+            // numbers, characters, and strings are shared by the pool
+            if (tokens.match(Token.Type.INTEGER)) {
+                return sink.integerExpr(tokens.literal(-1));
+            }
+            if (tokens.match(Token.Type.DECIMAL)) {
+                return sink.literalExpr(literals.decimal(tokens.literal(-1)));
+            }
+            if (tokens.match(Token.Type.CHARACTER)) {
+                return sink.literalExpr(literals.character(tokens.literal(-1)));
+            }
+            if (tokens.match(Token.Type.STRING)) {
+                return sink.literalExpr(literals.string(tokens.literal(-1)));
+            }
+            throw error("Expected literal.");
+        }
+
+        // parenthesized expression ( expr )
+        private E parseGroupExpr() throws ParseException {
+            if (!tokens.match(TokenKind.LEFT_PAREN)) {
+                throw error("Expected '('.");
+            }
+            if (tokens.peek(TokenKind.RIGHT_PAREN)) {
+                throw error("Expected expression.");
+            }
+            E expr = parseExpr();
+            if (!tokens.match(TokenKind.RIGHT_PAREN)) {
+                throw error("Expected ')'.");
+            }
+            return sink.groupExpr(expr);
+        }
+
+        // object do let/def ... end (fields and methods)
+        private E parseObjectExpr() throws ParseException {
+            if (!tokens.match(TokenKind.OBJECT)) {
+                throw error("Expected 'OBJECT'.");
+            }
+            if (!tokens.match(TokenKind.DO)) {
+                throw error("Expected 'DO'.");
+            }
+            List<S> fields = new ArrayList<>();
+            List<S> methods = new ArrayList<>();
+            while (!tokens.peek(TokenKind.END)) {
+                var start = tokens.position();
+                if (tokens.peek(TokenKind.LET)) {
+                    // field
+                    fields.add(span(start, parseLetStmt()));
+                } else if (tokens.peek(TokenKind.DEF)) {
+                    // method
+                    methods.add(span(start, parseDefStmt()));
+                } else {
+                    throw error("Expected field or method in object.");
+                }
+            }
+            if (!tokens.match(TokenKind.END)) {
+                throw error("Expected 'END'.");
+            }
+            return sink.objectExpr(fields, methods);
+        }
+
+        // identifier -> variable ; identifier ( args ) -> function call
+        private E parseVariableOrFunctionExpr() throws ParseException {
+            if (!tokens.match(Token.Type.IDENTIFIER)) {
+                throw error("Expected variable or function.");
+            }
+            String name = tokens.literal(-1);
+            if (tokens.match(TokenKind.LEFT_PAREN)) {
+                List<E> arguments = new ArrayList<>();
+                if (!tokens.peek(TokenKind.RIGHT_PAREN)) {
+                    do {
+                        arguments.add(parseExpr());
+                    } while (tokens.match(TokenKind.COMMA));
+                }
+                if (!tokens.match(TokenKind.RIGHT_PAREN)) {
+                    throw error("Expected ')'.");
+                }
+                return sink.functionExpr(name, arguments);
+            }
+            // no ( so variable
+            return sink.variableExpr(name);
+        }
+
+    }
+
+    /**
+     * Builds {@link Ast} records, sharing the parser's literal pool.
+     */
+    private final class RecordSink implements NodeSink<Ast.Stmt, Ast.Expr> {
+
+        @Override
+        public Ast.Stmt letStmt(String name, Ast.Expr value) {
+            return new Ast.Stmt.Let(name, Optional.ofNullable(value));
+        }
+
+        @Override
+        public Ast.Stmt defStmt(String name, List<String> parameters, List<Ast.Stmt> body) {
+            return new Ast.Stmt.Def(name, parameters, body);
+        }
+
+        @Override
+        public Ast.Stmt ifStmt(Ast.Expr condition, List<Ast.Stmt> thenBody, List<Ast.Stmt> elseBody) {
+            return new Ast.Stmt.If(condition, thenBody, elseBody);
+        }
+
+        @Override
+        public Ast.Stmt forStmt(String name, Ast.Expr expression, List<Ast.Stmt> body) {
+            return new Ast.Stmt.For(name, expression, body);
+        }
+
+        @Override
+        public Ast.Stmt returnStmt(Ast.Expr value) {
+            return new Ast.Stmt.Return(Optional.ofNullable(value));
+        }
+
+        @Override
+        public Ast.Stmt expressionStmt(Ast.Expr expression) {
+            return new Ast.Stmt.Expression(expression);
+        }
+
+        @Override
+        public Ast.Stmt assignmentStmt(Ast.Expr expression, Ast.Expr value) {
+            return new Ast.Stmt.Assignment(expression, value);
+        }
+
+        @Override
+        public Ast.Expr literalExpr(Object value) {
+            return new Ast.Expr.Literal(value);
+        }
+
+        @Override
+        public Ast.Expr integerExpr(String literal) {
+            return new Ast.Expr.Literal(literals.integer(literal));
+        }
+
+        @Override
+        public Ast.Expr groupExpr(Ast.Expr expression) {
+            return new Ast.Expr.Group(expression);
+        }
+
+        @Override
+        public Ast.Expr binaryExpr(String operator, Ast.Expr left, Ast.Expr right) {
+            return new Ast.Expr.Binary(operator, left, right);
+        }
+
+        @Override
+        public Ast.Expr variableExpr(String name) {
+            return new Ast.Expr.Variable(name);
+        }
+
+        @Override
+        public Ast.Expr propertyExpr(Ast.Expr receiver, String name) {
+            return new Ast.Expr.Property(receiver, name);
+        }
+
+        @Override
+        public Ast.Expr functionExpr(String name, List<Ast.Expr> arguments) {
             return new Ast.Expr.Function(name, arguments);
         }
-        // no ( so variable
-        return new Ast.Expr.Variable(name);
+
+        @Override
+        public Ast.Expr methodExpr(Ast.Expr receiver, String name, List<Ast.Expr> arguments) {
+            return new Ast.Expr.Method(receiver, name, arguments);
+        }
+
+        /**
+         * The fields and methods are only ever built by
+         * {@link #letStmt(String, Ast.Expr)} and
+         * {@link #defStmt(String, List, List)}, respectively.
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public Ast.Expr objectExpr(List<Ast.Stmt> fields, List<Ast.Stmt> methods) {
+            return new Ast.Expr.ObjectExpr(Optional.empty(), (List<Ast.Stmt.Let>) (List<?>) fields, (List<Ast.Stmt.Def>) (List<?>) methods);
+        }
+
+    }
+
+    /**
+     * A binary operator's literal (for {@link Ast.Expr.Binary}), precedence,
+     * and associativity, registered in {@link #OPERATORS} by token kind.
+     */
+    record Operator(String literal, int precedence, boolean rightAssociative) {
+
+        static final int LOGICAL = 1;
+        static final int COMPARISON = 2;
+        static final int ADDITIVE = 3;
+        static final int MULTIPLICATIVE = 4;
+
+        private static void register(int precedence, boolean rightAssociative, int... kinds) {
+            for (var kind : kinds) {
+                OPERATORS[kind] = new Operator(TokenKind.literal(kind), precedence, rightAssociative);
+            }
+        }
+
+    }
+
+    /**
+     * Parses a range of whole top-level statements, see
+     * {@link #parseParallel(TokenBuffer, ForkJoinPool)}.
+     */
+    @SuppressWarnings("serial") //tasks are never serialized
+    private static final class Chunk extends RecursiveTask<List<Ast.Stmt>> {
+
+        private final Parser parser;
+        private boolean failed = false;
+
+        private Chunk(Parser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        protected List<Ast.Stmt> compute() {
+            try {
+                return ((Ast.Source) parser.parse("source")).statements();
+            } catch (ParseException e) {
+                failed = true;
+                return List.of();
+            }
+        }
+
     }
 
-    private static final class TokenStream {
+    /**
+     * Reads tokens either directly from the columns of a {@link TokenBuffer},
+     * or from a sliding window of tokens pulled from an iterator. The window
+     * is large enough for the parser's lookahead plus the previous token (for
+     * {@code get(-1)}), and is a ring buffer indexed by absolute position so
+     * older tokens are released as parsing proceeds.
+     *
+     * <p>
+     * Tokens are matched by their {@link TokenKind}, which a buffer already
+     * stores and the window computes once as each token is pulled, so
+     * {@link #peek} and {@link #match} are integer comparisons.
+     */
+    static final class TokenStream {
 
-        private final List<Token> tokens;
+        private static final int WINDOW_SIZE = 8; //power of two, for masking
+        private static final int LOOKBEHIND = 1;
+
+        private final TokenBuffer buffer;
+        private final Iterator<Token> source;
+        private final Token[] window;
+        private final int[] kinds;
         private int index = 0;
+        private int end = 0; //absolute index after the last buffered token
+
+        /**
+         * Creates a stream of the tokens [from, to) of the buffer, which keep
+         * their absolute positions (and offsets).
+         */
+        private TokenStream(TokenBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.source = null;
+            this.window = null;
+            this.kinds = null;
+            this.index = from;
+            this.end = to;
+        }
 
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
+        private TokenStream(Iterator<Token> source) {
+            this.buffer = null;
+            this.source = source;
+            this.window = new Token[WINDOW_SIZE];
+            this.kinds = new int[WINDOW_SIZE];
         }
 
         /**
          * Returns true if there is a token at (index + offset).
          */
         public boolean has(int offset) {
-            return index + offset < tokens.size();
+            if (buffer == null) {
+                Preconditions.checkArgument(offset >= -LOOKBEHIND && offset < WINDOW_SIZE - LOOKBEHIND, offset);
+                while (end <= index + offset && source.hasNext()) {
+                    var token = source.next();
+                    window[end & (WINDOW_SIZE - 1)] = token;
+                    kinds[end++ & (WINDOW_SIZE - 1)] = TokenKind.of(token);
+                }
+            }
+            return index + offset < end;
         }
 
         /**
@@ -495,46 +1117,103 @@ public final class Parser {
          */
         public Token get(int offset) {
             Preconditions.checkState(has(offset));
-            return tokens.get(index + offset);
+            return buffer != null ? buffer.get(index + offset) : window[(index + offset) & (WINDOW_SIZE - 1)];
+        }
+
+        /**
+         * Returns the literal of the token at (index + offset), which avoids
+         * creating the token when reading from a {@link TokenBuffer}.
+         */
+        public String literal(int offset) {
+            Preconditions.checkState(has(offset));
+            return buffer != null ? buffer.literal(index + offset) : get(offset).literal();
+        }
+
+        /**
+         * Returns the absolute position of the next token.
+         */
+        public int position() {
+            return index;
+        }
+
+        /**
+         * Returns the start offset of the token at the given absolute
+         * position, which requires a {@link TokenBuffer}.
+         */
+        public int start(int position) {
+            Preconditions.checkState(buffer != null, "Token offsets require a TokenBuffer.");
+            return buffer.start(position);
+        }
+
+        public int end(int position) {
+            Preconditions.checkState(buffer != null, "Token offsets require a TokenBuffer.");
+            return buffer.end(position);
+        }
+
+        /**
+         * Returns the start offset of the next token, or the end offset of
+         * the last token if there are none (0 if there are no tokens).
+         */
+        public int offset() {
+            if (has(0)) {
+                return start(index);
+            }
+            return index > 0 ? end(index - 1) : 0;
         }
 
         /**
          * Returns the next token, if present.
          */
         public Optional<Token> getNext() {
-            return index < tokens.size() ? Optional.of(tokens.get(index)) : Optional.empty();
+            return has(0) ? Optional.of(get(0)) : Optional.empty();
         }
 
         /**
-         * Returns true if the next characters match their corresponding
-         * pattern. Each pattern is either a {@link Token.Type}, matching tokens
-         * of that type, or a {@link String}, matching tokens with that literal.
-         * In effect, {@code new Token(Token.Type.IDENTIFIER, "literal")} is
-         * matched by both {@code peek(Token.Type.IDENTIFIER)} and
-         * {@code peek("literal")}.
+         * Returns the {@link TokenKind} of the token at (index + offset), or
+         * {@link TokenKind#EOF} if there is none.
          */
-        public boolean peek(Object... patterns) {
-            if (!has(patterns.length - 1)) {
-                return false;
+        public int kind(int offset) {
+            if (!has(offset)) {
+                return TokenKind.EOF;
             }
-            for (int offset = 0; offset < patterns.length; offset++) {
-                var token = tokens.get(index + offset);
-                var pattern = patterns[offset];
-                Preconditions.checkState(pattern instanceof Token.Type || pattern instanceof String, pattern);
-                if (!token.type().equals(pattern) && !token.literal().equals(pattern)) {
-                    return false;
-                }
+            var position = index + offset;
+            return buffer != null ? buffer.kind(position) : kinds[position & (WINDOW_SIZE - 1)];
+        }
+
+        /**
+         * Returns true if the next token is of the given kind, i.e. a specific
+         * keyword or operator.
+         */
+        public boolean peek(int kind) {
+            return kind(0) == kind;
+        }
+
+        /**
+         * Returns true if the next token is of the given type, which includes
+         * keywords for {@link Token.Type#IDENTIFIER}.
+         */
+        public boolean peek(Token.Type type) {
+            if (!has(0)) {
+                return false;
             }
-            return true;
+            return buffer != null ? TokenKind.type(buffer.kind(index)) == type : get(0).type() == type;
         }
 
         /**
          * Equivalent to peek, but also advances the token stream.
          */
-        public boolean match(Object... patterns) {
-            var peek = peek(patterns);
+        public boolean match(int kind) {
+            var peek = peek(kind);
+            if (peek) {
+                index++;
+            }
+            return peek;
+        }
+
+        public boolean match(Token.Type type) {
+            var peek = peek(type);
             if (peek) {
-                index += patterns.length;
+                index++;
             }
             return peek;
         }
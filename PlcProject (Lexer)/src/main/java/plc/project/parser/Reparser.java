@@ -0,0 +1,327 @@
+package plc.project.parser;
+
+import com.google.common.base.Preconditions;
+import plc.project.lexer.TokenBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Updates the AST of a document after an edit, reparsing only the statements
+ * touched by the edit within the innermost enclosing block and reusing every
+ * other node of the previous AST by reference. This is the parser's
+ * counterpart to {@code Lexer#relex}, which provides the new tokens.
+ *
+ * <p>
+ * Starting from the top-level statements, the reparser descends into a
+ * {@code DEF}, {@code IF}, or {@code FOR} body (or a method of an
+ * {@code OBJECT} assigned by {@code LET}) while the edit is strictly within
+ * a single statement's body. At the innermost such body, the statements
+ * touched by the edit are reparsed from the new tokens and spliced between
+ * the untouched ones, and the enclosing statements are rebuilt around the
+ * new body. Statements always end by matching their last token (as relied
+ * on by {@link Parser#parseParallel}), so if the new tokens parse as whole
+ * statements, the result is exactly what a full parse would produce. When
+ * they don't (e.g. the edit removed an {@code END}), the reparse widens to
+ * the enclosing statement, and at the top level falls back to a full parse,
+ * which also reports the {@link ParseException}.
+ *
+ * <p>
+ * Lexing can change past the edit (e.g. by inserting {@code //}), but never
+ * past a line break, so every statement on the rest of the edited line is
+ * also considered touched.
+ */
+public final class Reparser {
+
+    private final Spans spans;
+    private final TokenBuffer tokens;
+    private final int low; //[low, high] is the edited region, after the edit
+    private final int high;
+    private final int maxDepth;
+
+    private Reparser(Spans spans, TokenBuffer tokens, int low, int high, int maxDepth) {
+        this.spans = spans;
+        this.tokens = tokens;
+        this.low = low;
+        this.high = high;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Returns the AST of a document after an edit, updating spans (which
+     * must be those of the previous AST) to be those of the new AST. A single
+     * edit is supported; multiple edits should be applied one at a time.
+     *
+     * @param previous the AST of the document before the edit
+     * @param spans the spans of previous, from a parser created with them
+     * @param tokens the tokens of the document after the edit, e.g. from
+     *               {@code Lexer#relex}
+     * @param text the document after the edit
+     * @param offset the index of the edit
+     * @param removed the number of characters removed at offset
+     * @param inserted the number of characters inserted at offset
+     */
+    public static Ast.Source reparse(Ast.Source previous, Spans spans, TokenBuffer tokens, CharSequence text, int offset, int removed, int inserted) throws ParseException {
+        return reparse(previous, spans, tokens, text, offset, removed, inserted, Parser.DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Equivalent to
+     * {@link #reparse(Ast.Source, Spans, TokenBuffer, CharSequence, int, int, int)}
+     * with the given maximum nesting depth, see {@link Parser#limitDepth(int)},
+     * which applies to reparsed statements at their depth within the source.
+     */
+    public static Ast.Source reparse(Ast.Source previous, Spans spans, TokenBuffer tokens, CharSequence text, int offset, int removed, int inserted, int maxDepth) throws ParseException {
+        Preconditions.checkArgument(offset >= 0 && removed >= 0 && inserted >= 0 && offset + inserted <= text.length());
+        Preconditions.checkArgument(maxDepth > 0, maxDepth);
+        Preconditions.checkArgument(spans.contains(previous), "Spans are not those of the previous source.");
+        spans.edit(offset, removed, inserted);
+        var high = offset + inserted;
+        while (high < text.length() && text.charAt(high) != '\n' && text.charAt(high) != '\r') {
+            high++;
+        }
+        var statements = new Reparser(spans, tokens, offset, high, maxDepth).reparse(previous.statements(), true, 0);
+        if (statements == null) {
+            spans.clear();
+            return (Ast.Source) new Parser(tokens, spans).limitDepth(maxDepth).parse("source");
+        }
+        var source = new Ast.Source(statements);
+        spans.remove(previous);
+        if (tokens.size() > 0) {
+            spans.put(source, tokens.start(0), tokens.end(tokens.size() - 1));
+        } else {
+            spans.put(source, 0, 0);
+        }
+        return source;
+    }
+
+    /**
+     * Returns the statements of a block after the edit, or null if the edit
+     * may affect the block's delimiters (which are only known to be
+     * untouched at the top level) or the touched statements fail to parse
+     * as whole statements of the block. The block is nested within depth
+     * statements and primary expressions, as counted by the parser.
+     */
+    private List<Ast.Stmt> reparse(List<Ast.Stmt> statements, boolean top, int depth) {
+        var size = statements.size();
+        if (size > 0 && !spans.contains(statements.get(0))) {
+            return null; //synthesized (e.g. RETURN IF), so reparse the parent
+        }
+        //statements [first, last] are touched, where last = first - 1 if none
+        var first = 0;
+        for (int hi = size; first < hi; ) {
+            var middle = (first + hi) >>> 1;
+            if (end(statements.get(middle)) < low) {
+                first = middle + 1;
+            } else {
+                hi = middle;
+            }
+        }
+        var last = first;
+        for (int hi = size; last < hi; ) {
+            var middle = (last + hi) >>> 1;
+            if (start(statements.get(middle)) <= high) {
+                last = middle + 1;
+            } else {
+                hi = middle;
+            }
+        }
+        last--;
+        int from, to;
+        if (first > last) {
+            if (!top && (first == 0 || first == size)) {
+                return null;
+            }
+            from = first > 0 ? end(statements.get(first - 1)) : 0;
+            to = first < size ? start(statements.get(first)) : Integer.MAX_VALUE;
+        } else {
+            if (!top && (first == 0 && low <= start(statements.get(first)) || last == size - 1 && high > end(statements.get(last)))) {
+                return null;
+            }
+            if (first == last) {
+                var statement = reparse(statements.get(first), depth);
+                if (statement != null) {
+                    var result = new ArrayList<>(statements);
+                    result.set(first, statement);
+                    return result;
+                }
+            }
+            from = Math.min(start(statements.get(first)), low);
+            to = Math.max(end(statements.get(last)), high);
+        }
+        //new spans are kept separately until the statements parse, so that a
+        //failed attempt doesn't leave spans for unreachable nodes
+        var replacementSpans = new Spans();
+        List<Ast.Stmt> replacement;
+        try {
+            replacement = Parser.parseStatements(tokens, index(from), index(to), replacementSpans, depth, maxDepth);
+        } catch (ParseException e) {
+            return null;
+        }
+        if (replacement == null) {
+            return null;
+        }
+        spans.putAll(replacementSpans);
+        for (int i = first; i <= last; i++) {
+            forget(statements.get(i));
+        }
+        var result = new ArrayList<Ast.Stmt>(size - (last - first + 1) + replacement.size());
+        result.addAll(statements.subList(0, first));
+        result.addAll(replacement);
+        result.addAll(statements.subList(last + 1, size));
+        return result;
+    }
+
+    /**
+     * Returns a statement with the edit reparsed within one of its bodies,
+     * or null if the statement has to be reparsed as a whole. The statement
+     * is in a block nested within depth statements and primary expressions.
+     */
+    private Ast.Stmt reparse(Ast.Stmt statement, int depth) {
+        return switch (statement) {
+            case Ast.Stmt.Def def -> {
+                var body = reparse(def.body(), false, depth + 1);
+                yield body != null ? replace(def, new Ast.Stmt.Def(def.name(), def.parameters(), body)) : null;
+            }
+            case Ast.Stmt.For stmt -> {
+                var body = reparse(stmt.body(), false, depth + 1);
+                yield body != null ? replace(stmt, new Ast.Stmt.For(stmt.name(), stmt.expression(), body)) : null;
+            }
+            case Ast.Stmt.If stmt -> {
+                var thenBody = reparse(stmt.thenBody(), false, depth + 1);
+                if (thenBody != null) {
+                    yield replace(stmt, new Ast.Stmt.If(stmt.condition(), thenBody, stmt.elseBody()));
+                }
+                var elseBody = reparse(stmt.elseBody(), false, depth + 1);
+                yield elseBody != null ? replace(stmt, new Ast.Stmt.If(stmt.condition(), stmt.thenBody(), elseBody)) : null;
+            }
+            case Ast.Stmt.Let let -> {
+                if (let.value().isPresent() && let.value().get() instanceof Ast.Expr.ObjectExpr object && spans.contains(object)) {
+                    //the object is entered as a primary expression, but its
+                    //methods aren't entered as statements
+                    var methods = reparse(object, depth + 1);
+                    if (methods != null) {
+                        var value = replace(object, new Ast.Expr.ObjectExpr(object.name(), object.fields(), methods));
+                        yield replace(let, new Ast.Stmt.Let(let.name(), Optional.of(value)));
+                    }
+                }
+                yield null;
+            }
+            default -> null;
+        };
+    }
+
+    /**
+     * Returns the methods of an object with the edit reparsed within the
+     * body of one of them, or null if no method strictly contains the edit.
+     */
+    private List<Ast.Stmt.Def> reparse(Ast.Expr.ObjectExpr object, int depth) {
+        for (var field : object.fields()) {
+            if (touched(field)) {
+                return null;
+            }
+        }
+        for (int i = 0; i < object.methods().size(); i++) {
+            var method = object.methods().get(i);
+            if (!touched(method)) {
+                continue;
+            }
+            for (int j = i + 1; j < object.methods().size(); j++) {
+                if (touched(object.methods().get(j))) {
+                    return null;
+                }
+            }
+            if (!(reparse(method, depth) instanceof Ast.Stmt.Def def)) {
+                return null;
+            }
+            var methods = new ArrayList<>(object.methods());
+            methods.set(i, def);
+            return methods;
+        }
+        return null;
+    }
+
+    private boolean touched(Ast ast) {
+        return start(ast) <= high && end(ast) >= low;
+    }
+
+    private int start(Ast ast) {
+        return spans.start(ast);
+    }
+
+    private int end(Ast ast) {
+        return spans.end(ast);
+    }
+
+    /**
+     * Returns the index of the first token starting at or after offset.
+     */
+    private int index(int offset) {
+        int lo = 0, hi = tokens.size();
+        while (lo < hi) {
+            var middle = (lo + hi) >>> 1;
+            if (tokens.start(middle) < offset) {
+                lo = middle + 1;
+            } else {
+                hi = middle;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Moves the span of a rebuilt node to its replacement, which covers the
+     * same tokens.
+     */
+    private <T extends Ast> T replace(Ast previous, T ast) {
+        spans.put(ast, start(previous), end(previous));
+        spans.remove(previous);
+        return ast;
+    }
+
+    /**
+     * Removes the spans of a replaced subtree, which is no longer reachable.
+     */
+    private void forget(Ast ast) {
+        spans.remove(ast);
+        switch (ast) {
+            case Ast.Source source -> source.statements().forEach(this::forget);
+            case Ast.Stmt.Let let -> let.value().ifPresent(this::forget);
+            case Ast.Stmt.Def def -> def.body().forEach(this::forget);
+            case Ast.Stmt.If stmt -> {
+                forget(stmt.condition());
+                stmt.thenBody().forEach(this::forget);
+                stmt.elseBody().forEach(this::forget);
+            }
+            case Ast.Stmt.For stmt -> {
+                forget(stmt.expression());
+                stmt.body().forEach(this::forget);
+            }
+            case Ast.Stmt.Return stmt -> stmt.value().ifPresent(this::forget);
+            case Ast.Stmt.Expression stmt -> forget(stmt.expression());
+            case Ast.Stmt.Assignment stmt -> {
+                forget(stmt.expression());
+                forget(stmt.value());
+            }
+            case Ast.Expr.Literal expr -> {}
+            case Ast.Expr.Group expr -> forget(expr.expression());
+            case Ast.Expr.Binary expr -> {
+                forget(expr.left());
+                forget(expr.right());
+            }
+            case Ast.Expr.Variable expr -> {}
+            case Ast.Expr.Property expr -> forget(expr.receiver());
+            case Ast.Expr.Function expr -> expr.arguments().forEach(this::forget);
+            case Ast.Expr.Method expr -> {
+                forget(expr.receiver());
+                expr.arguments().forEach(this::forget);
+            }
+            case Ast.Expr.ObjectExpr expr -> {
+                expr.fields().forEach(this::forget);
+                expr.methods().forEach(this::forget);
+            }
+        }
+    }
+
+}
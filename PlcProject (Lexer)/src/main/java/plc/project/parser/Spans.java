@@ -0,0 +1,119 @@
+package plc.project.parser;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * The source span of each AST node built by a {@link Parser}, kept in an
+ * identity map beside the tree instead of in every {@link Ast} record (which
+ * also means equal nodes at different positions are distinguished). Offsets
+ * are those of the parser's {@link plc.project.lexer.TokenBuffer}, from the
+ * start of a node's first token to the end of its last, and can be resolved
+ * to lines and columns with the lexer's {@link plc.project.lexer.LineIndex}.
+ *
+ * <p>
+ * Nodes the parser synthesizes without corresponding tokens (such as the
+ * {@code RETURN} in the desugaring of {@code RETURN IF}) have no span.
+ *
+ * <p>
+ * When a {@link Reparser} reuses nodes after an edit, their spans are not
+ * rewritten. Instead, each span remembers how many edits had been recorded
+ * when it was added and is shifted by any later edits when it is read, so
+ * an edit costs time proportional to the nodes it replaces.
+ */
+public final class Spans {
+
+    //Spans are rebased (applying all edits) once this many edits accumulate.
+    private static final int MAX_EDITS = 64;
+
+    private final IdentityHashMap<Ast, Span> spans = new IdentityHashMap<>();
+    private int[] edits = new int[3 * 8]; //offset, removed, inserted
+    private int editCount = 0;
+
+    private record Span(int start, int end, int version) {}
+
+    void put(Ast ast, int start, int end) {
+        spans.put(ast, new Span(start, end, editCount));
+    }
+
+    void putAll(Spans other) {
+        other.spans.forEach((ast, span) -> put(ast, other.start(span), other.end(span)));
+    }
+
+    void remove(Ast ast) {
+        spans.remove(ast);
+    }
+
+    void clear() {
+        spans.clear();
+        editCount = 0;
+    }
+
+    /**
+     * Records that the characters [offset, offset + removed) were replaced by
+     * inserted characters, shifting the spans of all existing nodes after it.
+     */
+    void edit(int offset, int removed, int inserted) {
+        if (editCount == MAX_EDITS) {
+            spans.replaceAll((ast, span) -> new Span(start(span), end(span), 0));
+            editCount = 0;
+        }
+        if (3 * editCount == edits.length) {
+            edits = Arrays.copyOf(edits, edits.length * 2);
+        }
+        edits[3 * editCount] = offset;
+        edits[3 * editCount + 1] = removed;
+        edits[3 * editCount + 2] = inserted;
+        editCount++;
+    }
+
+    public boolean contains(Ast ast) {
+        return spans.containsKey(ast);
+    }
+
+    public int start(Ast ast) {
+        return start(span(ast));
+    }
+
+    public int end(Ast ast) {
+        return end(span(ast));
+    }
+
+    public int size() {
+        return spans.size();
+    }
+
+    private Span span(Ast ast) {
+        var span = spans.get(ast);
+        Preconditions.checkArgument(span != null, "No span for %s.", ast);
+        return span;
+    }
+
+    private int start(Span span) {
+        return shift(span.start(), span.version());
+    }
+
+    private int end(Span span) {
+        return shift(span.end(), span.version());
+    }
+
+    /**
+     * Shifts an offset by the edits recorded since the given version. An
+     * offset inside removed characters moves to the start of the edit.
+     */
+    private int shift(int position, int version) {
+        for (int i = version; i < editCount; i++) {
+            var offset = edits[3 * i];
+            var removed = edits[3 * i + 1];
+            if (position >= offset + removed) {
+                position += edits[3 * i + 2] - removed;
+            } else if (position > offset) {
+                position = offset;
+            }
+        }
+        return position;
+    }
+
+}
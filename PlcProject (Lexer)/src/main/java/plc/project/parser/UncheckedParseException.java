@@ -0,0 +1,20 @@
+package plc.project.parser;
+
+/**
+ * Wraps a {@link ParseException} thrown while parsing lazily, such as through
+ * {@link Parser#statements()}, where checked exceptions cannot be propagated.
+ */
+public final class UncheckedParseException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedParseException(ParseException cause) {
+        super(cause);
+    }
+
+    @Override
+    public ParseException getCause() {
+        return (ParseException) super.getCause();
+    }
+
+}
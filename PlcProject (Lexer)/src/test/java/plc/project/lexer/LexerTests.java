@@ -1,11 +1,20 @@
 package plc.project.lexer;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 public final class LexerTests {
@@ -117,6 +126,10 @@ public final class LexerTests {
     @MethodSource
     void testOperator(String test, String input, boolean equals) {
         test(input, List.of(new Token(Token.Type.OPERATOR, input)), equals);
+        if (equals) {
+            var token = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexOperator());
+            Assertions.assertEquals(new Token(Token.Type.OPERATOR, input), token);
+        }
     }
 
     public static Stream<Arguments> testOperator() {
@@ -191,6 +204,260 @@ public final class LexerTests {
                         new Token(Token.Type.OPERATOR, ";"))));
     }
 
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testStreaming(String test, String input, List<Token> expected) {
+        var tokens = new ArrayList<Token>();
+        new Lexer(new StringReader(input)).tokens().forEachRemaining(tokens::add);
+        Assertions.assertEquals(expected, tokens);
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testSourceTokens(String test, String input, List<Token> expected) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexSource());
+        Assertions.assertEquals(expected, tokens.stream().map(SourceToken::toToken).toList());
+        for (var token : tokens) {
+            Assertions.assertEquals(input.substring(token.start(), token.start() + token.length()), token.literal());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testTokenBuffer(String test, String input, List<Token> expected) {
+        var buffer = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        Assertions.assertEquals(expected, buffer.asList());
+        var streamed = Assertions.assertDoesNotThrow(() -> new Lexer(new StringReader(input)).lexBuffer());
+        Assertions.assertEquals(expected, streamed.asList());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String input, int offset, int removed, String inserted) {
+        var edited = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        var previous = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var expected = Assertions.assertDoesNotThrow(() -> new Lexer(edited).lexBuffer());
+        var received = Assertions.assertDoesNotThrow(() -> Lexer.relex(previous, edited, offset, removed, inserted.length()));
+        Assertions.assertEquals(expected.asList(), received.asList());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.start(i), received.start(i));
+            Assertions.assertEquals(expected.end(i), received.end(i));
+        }
+    }
+
+    public static Stream<Arguments> testRelex() {
+        return Stream.of(
+                Arguments.of("Extend Identifier", "LET ab = 1;", 6, 0, "c"),
+                Arguments.of("Join Tokens", "LET a b = 1;", 5, 1, ""),
+                Arguments.of("Exponent Lookahead", "x = 1e+ 5;", 7, 1, ""),
+                Arguments.of("Open String", "f(x);\ng(y);", 2, 0, "\"x\" + "),
+                Arguments.of("Comment Out", "a;\nb;\nc;", 3, 0, "//"),
+                Arguments.of("Uncomment", "a;\n//b;\nc;", 3, 2, ""),
+                Arguments.of("Delete All", "a b c", 0, 5, ""));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String input) {
+        var expected = Assertions.assertDoesNotThrow(() -> new Lexer(input).lex());
+        var received = Assertions.assertDoesNotThrow(() -> Lexer.lexParallel(input, ForkJoinPool.commonPool(), 16));
+        Assertions.assertEquals(expected, received);
+    }
+
+    public static Stream<Arguments> testParallel() {
+        return Stream.of(
+                Arguments.of("Lines", "LET x = 1;\n".repeat(100)),
+                Arguments.of("Strings and Comments", "print(\"a // b\"); // \"c\"\r\n".repeat(100)),
+                Arguments.of("Long Line", "x".repeat(100) + "\n" + "y".repeat(100)));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallelException(String test, String input, int index) {
+        var e = Assertions.assertThrows(LexException.class, () -> Lexer.lexParallel(input, ForkJoinPool.commonPool(), 16));
+        Assertions.assertEquals(index, e.getIndex());
+    }
+
+    public static Stream<Arguments> testParallelException() {
+        return Stream.of(
+                Arguments.of("First Error", "LET x = 1;\n".repeat(10) + "'ab'\n" + "\"\\q\"\n", 112),
+                Arguments.of("Unterminated", "LET x = 1;\n".repeat(10) + "\"abc\nx", 114));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testTokenKind(String test, String input, int kind) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        Assertions.assertEquals(kind, tokens.kind(0));
+        Assertions.assertEquals(kind, TokenKind.of(tokens.get(0)));
+        Assertions.assertEquals(tokens.type(0), TokenKind.type(kind));
+    }
+
+    public static Stream<Arguments> testTokenKind() {
+        return Stream.of(
+                Arguments.of("Keyword", "LET", TokenKind.LET),
+                Arguments.of("Last Keyword", "OR", TokenKind.OR),
+                Arguments.of("Identifier", "LETTER", TokenKind.IDENTIFIER),
+                Arguments.of("Operator", "(", TokenKind.LEFT_PAREN),
+                Arguments.of("Comparison", "!=", TokenKind.NOT_EQUAL),
+                Arguments.of("Other Operator", "!", TokenKind.OPERATOR),
+                Arguments.of("String", "\"LET\"", TokenKind.STRING)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLineIndex(String test, String input, int offset, String expected) {
+        var lexer = new Lexer(input);
+        Assertions.assertDoesNotThrow(lexer::lex);
+        Assertions.assertEquals(expected, lexer.lines().format(offset));
+        Assertions.assertEquals(expected, LineIndex.of(input).format(offset));
+    }
+
+    public static Stream<Arguments> testLineIndex() {
+        return Stream.of(
+                Arguments.of("First Line", "x y", 2, "1:3"),
+                Arguments.of("Line Feed", "x\ny", 2, "2:1"),
+                Arguments.of("Carriage Return", "x\r\ry", 3, "3:1"),
+                Arguments.of("CRLF", "x\r\n\r\n  y", 7, "3:3"),
+                Arguments.of("After Comment", "// x\n\"y\"", 6, "2:2"),
+                Arguments.of("End Of Input", "x\n", 2, "2:1")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testUtf8(String test, String input) {
+        var expected = Assertions.assertDoesNotThrow(() -> new Lexer(input).lex());
+        var bytes = input.getBytes(StandardCharsets.UTF_8);
+        var received = Assertions.assertDoesNotThrow(() -> new Utf8Lexer(bytes).lex());
+        Assertions.assertEquals(expected, received);
+        var buffer = Assertions.assertDoesNotThrow(() -> new Utf8Lexer(ByteBuffer.wrap(bytes)).lexBuffer());
+        Assertions.assertEquals(expected, buffer.asList());
+    }
+
+    public static Stream<Arguments> testUtf8() {
+        return Stream.of(
+                Arguments.of("ASCII", "LET x = 1.5e+3;\nprint(\"a\\tb\", 'c') != y;"),
+                Arguments.of("String", "\"caf\u00E9 \u65E5\u672C \uD83D\uDE00\""),
+                Arguments.of("Character", "'\u00E9' '\u65E5' '\u0085'"),
+                Arguments.of("Comment", "// \u00E9\u2028\nx"),
+                Arguments.of("Operator", "x \u00D7 y \uD83D\uDE00")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testUtf8Exception(String test, String input) {
+        var expected = Assertions.assertThrows(LexException.class, () -> new Lexer(input).lex());
+        var received = Assertions.assertThrows(LexException.class, () -> new Utf8Lexer(input.getBytes(StandardCharsets.UTF_8)).lex());
+        Assertions.assertEquals(expected.getIndex(), received.getIndex());
+    }
+
+    public static Stream<Arguments> testUtf8Exception() {
+        return Stream.of(
+                Arguments.of("Unterminated String", "\"\u00E9\u65E5\n\""),
+                Arguments.of("Invalid Escape", "\"\uD83D\uDE00\\q\""),
+                Arguments.of("Surrogate Character", "'\uD83D\uDE00'"),
+                Arguments.of("Line Separator", "\u00E9\u2028")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testMap(String test, byte[] input, boolean success, @TempDir Path directory) throws Exception {
+        var path = Files.write(directory.resolve("input.plc"), input);
+        if (success) {
+            var expected = new Lexer(new String(input, StandardCharsets.UTF_8)).lex();
+            Assertions.assertEquals(expected, Lexer.map(path).lex());
+        } else {
+            Assertions.assertThrows(CharacterCodingException.class, () -> Lexer.map(path));
+        }
+    }
+
+    public static Stream<Arguments> testMap() {
+        return Stream.of(
+                Arguments.of("ASCII", "LET x = 1.5e+3;\nprint(\"a\\tb\", 'c');".getBytes(StandardCharsets.US_ASCII), true),
+                Arguments.of("UTF-8", "\"caf\u00E9 \u65E5\u672C \uD83D\uDE00\" '\u00E9'".getBytes(StandardCharsets.UTF_8), true),
+                Arguments.of("Empty", new byte[0], true),
+                Arguments.of("Malformed", new byte[] {'"', (byte) 0xC3, '"'}, false)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testUtf8Offsets(String test, String input, List<Integer> starts) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Utf8Lexer(input.getBytes(StandardCharsets.UTF_8)).lexBuffer());
+        var received = new ArrayList<Integer>();
+        for (int i = 0; i < tokens.size(); i++) {
+            received.add(tokens.start(i));
+        }
+        Assertions.assertEquals(starts, received);
+    }
+
+    public static Stream<Arguments> testUtf8Offsets() {
+        return Stream.of(
+                Arguments.of("ASCII", "x = 1;", List.of(0, 2, 4, 5)),
+                Arguments.of("Multibyte", "\"\u00E9\u65E5\" x", List.of(0, 8))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRunScanner(String test, String input) {
+        var chars = input.toCharArray();
+        var scanner = RunScanner.get();
+        for (int from = 0; from <= chars.length; from++) {
+            Assertions.assertEquals(
+                RunScanner.SCALAR.find(chars, from, chars.length, '"', '\\', '\n', '\r'),
+                scanner.find(chars, from, chars.length, '"', '\\', '\n', '\r'));
+            Assertions.assertEquals(
+                RunScanner.SCALAR.skip(chars, from, chars.length, ' ', '\b', '\n', '\r', '\t'),
+                scanner.skip(chars, from, chars.length, ' ', '\b', '\n', '\r', '\t'));
+        }
+    }
+
+    public static Stream<Arguments> testRunScanner() {
+        return Stream.of(
+                Arguments.of("Indentation", " \t".repeat(50) + "x"),
+                Arguments.of("Comment", "// " + "abc ".repeat(50) + "\r\n"),
+                Arguments.of("String", "\"" + "a\\nb".repeat(40) + "\""),
+                Arguments.of("Unicode", "\u0085\u2028\uFFFF".repeat(40)),
+                Arguments.of("Unterminated", "x".repeat(100)));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testStreamingException(String test, String input, int index) {
+        var iterator = new Lexer(new StringReader(input)).tokens();
+        var e = Assertions.assertThrows(UncheckedLexException.class, () -> iterator.forEachRemaining(token -> {}));
+        Assertions.assertEquals(index, e.getCause().getIndex());
+    }
+
+    public static Stream<Arguments> testStreamingException() {
+        return Stream.of(
+                Arguments.of("After Tokens", "LET x = \"invalid\\escape\";", 17),
+                Arguments.of("Long Literal", "\"" + "a".repeat(20000), 20001));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLexRecovering(String test, String input, List<Integer> indices, List<String> literals) {
+        var diagnostics = new ArrayList<Diagnostic>();
+        var tokens = new Lexer(input).lexRecovering(diagnostics);
+        Assertions.assertEquals(indices, diagnostics.stream().map(Diagnostic::offset).toList());
+        Assertions.assertEquals(literals, tokens.asList().stream().map(Token::literal).toList());
+    }
+
+    public static Stream<Arguments> testLexRecovering() {
+        return Stream.of(
+                Arguments.of("Valid", "x = 1;", List.of(), List.of("x", "=", "1", ";")),
+                Arguments.of("Invalid Escape", "x = \"a\\qb\\zc\"; y", List.of(7), List.of("x", "=", ";", "y")),
+                Arguments.of("Unterminated String", "\"abc\nx \"\ny", List.of(4, 8), List.of("x", "y")),
+                Arguments.of("Character", "'' '\nx", List.of(1, 4), List.of("x")),
+                Arguments.of("Line Separator", "x\u2028y", List.of(1), List.of("x", "y")));
+    }
+
     private static void test(String input, List<Token> expected, boolean equals) {
         if (equals) {
             // Expect the result to exactly match expected.
@@ -1,16 +1,27 @@
 package plc.project.parser;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import plc.project.lexer.Diagnostic;
 import plc.project.lexer.Lexer;
 import plc.project.lexer.Token;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 final class ParserTests {
@@ -448,6 +459,73 @@ final class ParserTests {
                     ),
                     new Ast.Expr.Variable("third")
                 )
+            ),
+            Arguments.of("Logical",
+                List.of(
+                    new Token(Token.Type.IDENTIFIER, "first"),
+                    new Token(Token.Type.IDENTIFIER, "AND"),
+                    new Token(Token.Type.IDENTIFIER, "second"),
+                    new Token(Token.Type.IDENTIFIER, "OR"),
+                    new Token(Token.Type.IDENTIFIER, "third")
+                ),
+                new Ast.Expr.Binary(
+                    "OR",
+                    new Ast.Expr.Binary(
+                        "AND",
+                        new Ast.Expr.Variable("first"),
+                        new Ast.Expr.Variable("second")
+                    ),
+                    new Ast.Expr.Variable("third")
+                )
+            ),
+            Arguments.of("Comparison",
+                List.of(
+                    new Token(Token.Type.IDENTIFIER, "first"),
+                    new Token(Token.Type.OPERATOR, "<="),
+                    new Token(Token.Type.IDENTIFIER, "second"),
+                    new Token(Token.Type.OPERATOR, "+"),
+                    new Token(Token.Type.IDENTIFIER, "third")
+                ),
+                new Ast.Expr.Binary(
+                    "<=",
+                    new Ast.Expr.Variable("first"),
+                    new Ast.Expr.Binary(
+                        "+",
+                        new Ast.Expr.Variable("second"),
+                        new Ast.Expr.Variable("third")
+                    )
+                )
+            ),
+            Arguments.of("Logical Comparisons",
+                List.of(
+                    new Token(Token.Type.IDENTIFIER, "first"),
+                    new Token(Token.Type.OPERATOR, "=="),
+                    new Token(Token.Type.IDENTIFIER, "second"),
+                    new Token(Token.Type.IDENTIFIER, "AND"),
+                    new Token(Token.Type.IDENTIFIER, "third"),
+                    new Token(Token.Type.OPERATOR, "!="),
+                    new Token(Token.Type.IDENTIFIER, "fourth")
+                ),
+                new Ast.Expr.Binary(
+                    "AND",
+                    new Ast.Expr.Binary(
+                        "==",
+                        new Ast.Expr.Variable("first"),
+                        new Ast.Expr.Variable("second")
+                    ),
+                    new Ast.Expr.Binary(
+                        "!=",
+                        new Ast.Expr.Variable("third"),
+                        new Ast.Expr.Variable("fourth")
+                    )
+                )
+            ),
+            Arguments.of("Missing Operand",
+                List.of(
+                    new Token(Token.Type.IDENTIFIER, "first"),
+                    new Token(Token.Type.OPERATOR, ">")
+                ),
+                new ParseException("Expected variable or function.", Optional.empty())
             )
         );
     }
@@ -646,6 +724,673 @@ final class ParserTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testProgramTokenBuffer(String test, String input, Ast expected) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var received = Assertions.assertDoesNotThrow(() -> new Parser(tokens).parse("source"));
+        Assertions.assertEquals(expected, received);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSpans(String test, String input, List<String> expected) {
+        var lexer = new Lexer(input);
+        var tokens = Assertions.assertDoesNotThrow(lexer::lexBuffer);
+        var spans = new Spans();
+        var source = Assertions.assertDoesNotThrow(() -> (Ast.Source) new Parser(tokens, spans).parse("source"));
+        var lines = lexer.lines();
+        var received = source.statements().stream()
+            .map(stmt -> lines.format(spans.start(stmt)) + "-" + lines.format(spans.end(stmt)))
+            .toList();
+        Assertions.assertEquals(expected, received);
+        Assertions.assertTrue(spans.start(source) <= spans.end(source));
+    }
+
+    private static Stream<Arguments> testSpans() {
+        return Stream.of(
+            Arguments.of("Single Line", "LET x = 1; print(x);", List.of("1:1-1:11", "1:12-1:21")),
+            Arguments.of("Multiple Lines", "DEF f() DO\r\n    RETURN 1;\r\nEND\nf();", List.of("1:1-3:4", "4:1-4:5")),
+            Arguments.of("Empty", "", List.of()),
+            Arguments.of("Comment Only", "// comment\n", List.of())
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testErrorOffset(String test, String input, String expected) {
+        var lexer = new Lexer(input);
+        var tokens = Assertions.assertDoesNotThrow(lexer::lexBuffer);
+        var parser = new Parser(tokens);
+        Assertions.assertThrows(ParseException.class, () -> parser.parse("source"));
+        Assertions.assertEquals(expected, lexer.lines().format(parser.offset()));
+    }
+
+    private static Stream<Arguments> testErrorOffset() {
+        return Stream.of(
+            Arguments.of("Missing Semicolon", "LET x = 1;\nLET y = 2\nLET z;", "3:1"),
+            Arguments.of("End Of Input", "LET x = 1;\n  print(x)", "2:11")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testStatements(String test, String input, Ast.Source expected) {
+        var statements = new Parser(new Lexer(new StringReader(input)).tokens()).statements();
+        var received = new ArrayList<Ast.Stmt>();
+        Assertions.assertDoesNotThrow(() -> statements.forEachRemaining(received::add));
+        Assertions.assertEquals(expected.statements(), received);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testStatementsException(String test, String input, int parsed, ParseException expected) {
+        var statements = new Parser(new Lexer(input).tokens()).statements();
+        for (int i = 0; i < parsed; i++) {
+            Assertions.assertDoesNotThrow(statements::next);
+        }
+        var received = Assertions.assertThrows(UncheckedParseException.class, statements::next);
+        Assertions.assertEquals(expected.getToken(), received.getCause().getToken());
+    }
+
+    private static Stream<Arguments> testStatementsException() {
+        return Stream.of(
+            Arguments.of("Second Statement", "LET x = 1;\nLET y = 2 LET z;", 1,
+                new ParseException("Expected ';'.", Optional.of(new Token(Token.Type.IDENTIFIER, "LET")))),
+            Arguments.of("Missing End", "print(1);\nDEF f() DO", 1,
+                new ParseException("Expected variable or function.", Optional.empty()))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParseParallel(String test, String input) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var expected = Assertions.assertDoesNotThrow(() -> new Parser(tokens).parse("source"));
+        var received = Assertions.assertDoesNotThrow(() -> Parser.parseParallel(tokens, ForkJoinPool.commonPool(), Parser.DEFAULT_MAX_DEPTH, 1));
+        Assertions.assertEquals(expected, received);
+        var list = Assertions.assertDoesNotThrow(() -> Parser.parseParallel(tokens.asList(), ForkJoinPool.commonPool(), Parser.DEFAULT_MAX_DEPTH, 1));
+        Assertions.assertEquals(expected, list);
+    }
+
+    private static Stream<Arguments> testParseParallel() {
+        return Stream.of(
+            Arguments.of("Statements", "LET x = 1;\nprint(x);\nRETURN IF x;\n".repeat(10)),
+            Arguments.of("Blocks", "DEF f(a) DO IF a DO RETURN 1; ELSE FOR i IN a DO print(i); END END END\n".repeat(10)),
+            Arguments.of("Objects", "LET o = OBJECT DO LET x; DEF m() DO RETURN x; END END;\n".repeat(10)),
+            Arguments.of("Object Condition", "IF OBJECT DO END DO print(1); END\nprint(2);\n".repeat(10))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParseParallelException(String test, String input) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var expected = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parse("source"));
+        var received = Assertions.assertThrows(ParseException.class, () -> Parser.parseParallel(tokens, ForkJoinPool.commonPool(), Parser.DEFAULT_MAX_DEPTH, 1));
+        Assertions.assertEquals(expected.getToken(), received.getToken());
+    }
+
+    private static Stream<Arguments> testParseParallelException() {
+        return Stream.of(
+            Arguments.of("Missing Semicolon", "LET x = 1;\n".repeat(5) + "LET y = 2\n" + "LET z = 3;\n".repeat(5)),
+            Arguments.of("Missing End", "DEF f() DO\n" + "print(1);\n".repeat(5)),
+            Arguments.of("Extra End", "print(1);\nEND\nprint(2)")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParseRecovering(String test, String input, List<String> expected, Ast.Source source) {
+        var lexer = new Lexer(input);
+        var tokens = Assertions.assertDoesNotThrow(lexer::lexBuffer);
+        var diagnostics = new ArrayList<Diagnostic>();
+        var received = new Parser(tokens).parseRecovering(diagnostics);
+        Assertions.assertEquals(expected, diagnostics.stream()
+            .map(diagnostic -> lexer.lines().format(diagnostic.offset()) + " " + diagnostic.message())
+            .toList());
+        Assertions.assertEquals(source, received);
+    }
+
+    private static Stream<Arguments> testParseRecovering() {
+        var x = new Ast.Stmt.Expression(new Ast.Expr.Variable("x"));
+        return Stream.of(
+            Arguments.of("Valid", "x;\nx;", List.of(), new Ast.Source(List.of(x, x))),
+            Arguments.of("Statements", "LET = 1;\nx;\nx = ;\nx;", List.of(
+                "1:5 Expected variable name.",
+                "3:5 Expected variable or function."
+            ), new Ast.Source(List.of(x, x))),
+            Arguments.of("Block Header", "DEF f( DO\n    x;\nEND\nx;", List.of(
+                "2:5 Expected ')'."
+            ), new Ast.Source(List.of(x))),
+            Arguments.of("Block Body", "DEF f() DO\n    x x;\n    x;\nEND\nx", List.of(
+                "2:7 Expected ';'.",
+                "5:2 Expected ';'."
+            ), new Ast.Source(List.of(new Ast.Stmt.Def("f", List.of(), List.of(x))))),
+            Arguments.of("Else Body", "x x;\nx;\nIF x DO ELSE y y; END", List.of(
+                "1:3 Expected ';'.",
+                "3:16 Expected ';'."
+            ), new Ast.Source(List.of(x, new Ast.Stmt.If(new Ast.Expr.Variable("x"), List.of(), List.of()))))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testReparse(String test, String input, int offset, int removed, String inserted, int reused) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var spans = new Spans();
+        var previous = Assertions.assertDoesNotThrow(() -> (Ast.Source) new Parser(tokens, spans).parse("source"));
+        var text = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        var relexed = Assertions.assertDoesNotThrow(() -> Lexer.relex(tokens, text, offset, removed, inserted.length()));
+        var received = Assertions.assertDoesNotThrow(() -> Reparser.reparse(previous, spans, relexed, text, offset, removed, inserted.length()));
+        var expectedSpans = new Spans();
+        var expected = Assertions.assertDoesNotThrow(() -> (Ast.Source) new Parser(new Lexer(text).lexBuffer(), expectedSpans).parse("source"));
+        Assertions.assertEquals(expected, received);
+        Assertions.assertEquals(
+            expected.statements().stream().map(stmt -> expectedSpans.start(stmt) + "-" + expectedSpans.end(stmt)).toList(),
+            received.statements().stream().map(stmt -> spans.start(stmt) + "-" + spans.end(stmt)).toList()
+        );
+        var previousStatements = statements(previous.statements());
+        Assertions.assertEquals(reused, statements(received.statements()).stream()
+            .filter(stmt -> previousStatements.stream().anyMatch(p -> p == stmt))
+            .count());
+    }
+
+    private static List<Ast.Stmt> statements(List<Ast.Stmt> statements) {
+        var all = new ArrayList<Ast.Stmt>();
+        for (var stmt : statements) {
+            all.add(stmt);
+            if (stmt instanceof Ast.Stmt.Def def) {
+                all.addAll(statements(def.body()));
+            }
+        }
+        return all;
+    }
+
+    private static Stream<Arguments> testReparse() {
+        var program = "LET x = 1;\nDEF f(a) DO\n    print(a);\n    RETURN a;\nEND\nprint(f(x));\n";
+        return Stream.of(
+            Arguments.of("Top Level", program, 8, 1, "2", 4),
+            Arguments.of("Def Body", program, 33, 1, "bb", 3),
+            Arguments.of("Def Header", program, 17, 1, "b", 2),
+            Arguments.of("Insert Statement", program, 11, 0, "LET y;\n", 2),
+            Arguments.of("Comment Out", program, 0, 0, "//", 4),
+            Arguments.of("Merge Defs", program.replace("END\n", "END\nDEF g() DO\nEND\n"), 51, 15, "", 2),
+            Arguments.of("Split Def", "DEF f() DO\n    x;\n    y;\nEND\n", 22, 2, "END\nDEF g() DO", 0)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testReparseException(String test, String input, int offset, int removed, String inserted) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var spans = new Spans();
+        var previous = Assertions.assertDoesNotThrow(() -> (Ast.Source) new Parser(tokens, spans).parse("source"));
+        var text = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        var relexed = Assertions.assertDoesNotThrow(() -> Lexer.relex(tokens, text, offset, removed, inserted.length()));
+        Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(text).lexBuffer()).parse("source"));
+        Assertions.assertThrows(ParseException.class, () -> Reparser.reparse(previous, spans, relexed, text, offset, removed, inserted.length()));
+    }
+
+    private static Stream<Arguments> testReparseException() {
+        return Stream.of(
+            Arguments.of("End In Def Body", "DEF f() DO\n    x;\n    y;\nEND\n", 22, 1, "END"),
+            Arguments.of("Else In Then Body", "IF c DO\n    x;\n    y;\nEND\n", 19, 1, "ELSE")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testParseCache(String test, String input, Ast.Source expected, @TempDir Path directory) throws IOException {
+        var cache = new ParseCache(directory, 1 << 20);
+        Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> cache.parse(input)));
+        Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> new ParseCache(directory, 1 << 20).parse(input)));
+        Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> cache.parse(input)));
+        Assertions.assertEquals(List.of(1, 1), List.of(cache.hits(), cache.misses()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testParseCacheTouchFailure(String test, String input, Ast.Source expected, @TempDir Path directory) throws IOException {
+        //the entry is evicted by another cache after it's read, which is still a hit
+        var cache = new ParseCache(directory, 1 << 20, path -> {
+            Files.delete(path);
+            throw new NoSuchFileException(path.toString());
+        });
+        Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> cache.parse(input)));
+        Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> cache.parse(input)));
+        Assertions.assertEquals(List.of(1, 1), List.of(cache.hits(), cache.misses()));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testAstFormat(String test, String input, @TempDir Path directory) throws IOException {
+        var expected = Assertions.assertDoesNotThrow(() -> (Ast.Source) new Parser(new Lexer(input).lexBuffer()).parse("source"));
+        var bytes = AstWriter.write(expected);
+        Assertions.assertEquals(expected, AstReader.read(bytes));
+        //a buffer positioned after a header, and limited before a trailer
+        var buffer = ByteBuffer.allocate(bytes.length + 7).put(new byte[3]).put(bytes);
+        buffer.position(3).limit(3 + bytes.length);
+        Assertions.assertEquals(expected, AstReader.read(buffer));
+        Assertions.assertEquals(3, buffer.position());
+        var path = Files.write(directory.resolve("ast.bin"), bytes);
+        var mapped = AstReader.map(path);
+        Assertions.assertEquals(expected.toString(), mapped.toString());
+        Assertions.assertSame(mapped.statements().get(0), mapped.statements().get(0));
+        Assertions.assertThrows(IOException.class, () -> AstReader.read(Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+
+    private static Stream<Arguments> testAstFormat() {
+        return Stream.of(
+            Arguments.of("Literals", "NIL; TRUE; FALSE; 'c'; '\u00E9'; \"string\"; \"string\";"),
+            Arguments.of("Integers", "0; 1; 123456789012345678; 12345678901234567890123;"),
+            Arguments.of("Decimals", "1.0; 1.50; 1.0e10; 1234567890.12345678901234567890;"),
+            Arguments.of("Statements", "LET x; LET y = x; x = y; RETURN; RETURN x; FOR i IN x DO RETURN i; END"),
+            Arguments.of("Blocks", "DEF f(a, b) DO IF a DO RETURN b; ELSE IF b DO END END END"),
+            Arguments.of("Expressions", "(a + b * c).d.e(f, g(h));"),
+            Arguments.of("Objects", "OBJECT DO LET x = 1; DEF f() DO END END; OBJECT DO END;")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testParseParallel")
+    void testParseArena(String test, String input) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var expected = Assertions.assertDoesNotThrow(() -> (Ast.Source) new Parser(tokens).parse("source"));
+        var arena = Assertions.assertDoesNotThrow(() -> new Parser(tokens).parseArena());
+        Assertions.assertEquals(expected, arena.toAst());
+        Assertions.assertEquals(expected, AstArena.of(expected).toAst());
+        var cursor = arena.cursor();
+        int nodes = 1;
+        while (cursor.next()) {
+            nodes++;
+        }
+        Assertions.assertEquals(arena.size(), nodes);
+    }
+
+    @ParameterizedTest
+    @MethodSource("testParseParallelException")
+    void testParseArenaException(String test, String input) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var expected = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parse("source"));
+        var received = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseArena());
+        Assertions.assertEquals(expected.getMessage(), received.getMessage());
+        Assertions.assertEquals(expected.getToken(), received.getToken());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLimitDepth(String test, String input, int maxDepth, boolean valid) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        if (valid) {
+            Assertions.assertDoesNotThrow(() -> new Parser(tokens).limitDepth(maxDepth).parse("source"));
+            Assertions.assertDoesNotThrow(() -> new Parser(tokens).limitDepth(maxDepth).parseArena());
+            Assertions.assertDoesNotThrow(() -> Parser.parseParallel(tokens, ForkJoinPool.commonPool(), maxDepth, 1));
+        } else {
+            var received = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).limitDepth(maxDepth).parse("source"));
+            Assertions.assertTrue(received.getMessage().startsWith("Maximum nesting depth exceeded."), received.getMessage());
+            var arena = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).limitDepth(maxDepth).parseArena());
+            Assertions.assertEquals(received.getToken(), arena.getToken());
+            var parallel = Assertions.assertThrows(ParseException.class, () -> Parser.parseParallel(tokens, ForkJoinPool.commonPool(), maxDepth, 1));
+            Assertions.assertEquals(received.getToken(), parallel.getToken());
+        }
+    }
+
+    private static Stream<Arguments> testLimitDepth() {
+        return Stream.of(
+            Arguments.of("Group", "x = ((x));", 4, true),
+            Arguments.of("Group Exceeded", "x = ((x));", 3, false),
+            Arguments.of("Call", "f(g(x));", 4, true),
+            Arguments.of("Call Exceeded", "f(g(x));", 3, false),
+            Arguments.of("Block", "IF x DO IF x DO x; END END", 4, true),
+            Arguments.of("Block Exceeded", "IF x DO IF x DO x; END END", 3, false),
+            Arguments.of("Object Exceeded", "LET o = OBJECT DO LET p = OBJECT DO END; END;", 2, false),
+            Arguments.of("Operators", "x = a + b * c - d / e AND f;", 2, true),
+            Arguments.of("Default", "x = " + "(".repeat(Parser.DEFAULT_MAX_DEPTH) + "x" + ")".repeat(Parser.DEFAULT_MAX_DEPTH) + ";", Parser.DEFAULT_MAX_DEPTH, false)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testReparseLimitDepth(String test, String input, int offset, int removed, String inserted, int maxDepth, boolean valid) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var spans = new Spans();
+        var previous = Assertions.assertDoesNotThrow(() -> (Ast.Source) new Parser(tokens, spans).limitDepth(maxDepth).parse("source"));
+        var text = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        var relexed = Assertions.assertDoesNotThrow(() -> Lexer.relex(tokens, text, offset, removed, inserted.length()));
+        if (valid) {
+            var expected = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(text).lexBuffer()).limitDepth(maxDepth).parse("source"));
+            Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> Reparser.reparse(previous, spans, relexed, text, offset, removed, inserted.length(), maxDepth)));
+        } else {
+            var received = Assertions.assertThrows(ParseException.class, () -> Reparser.reparse(previous, spans, relexed, text, offset, removed, inserted.length(), maxDepth));
+            Assertions.assertTrue(received.getMessage().startsWith("Maximum nesting depth exceeded."), received.getMessage());
+        }
+    }
+
+    private static Stream<Arguments> testReparseLimitDepth() {
+        var block = "IF x DO\n    IF x DO\n        x = a;\n    END\nEND\n";
+        var object = "LET o = OBJECT DO\n    DEF m() DO\n        x = a;\n    END\nEND;\n";
+        return Stream.of(
+            Arguments.of("Block", block, block.indexOf("a;"), 1, "b", 4, true),
+            Arguments.of("Block Exceeded", block, block.indexOf("a;"), 1, "(a)", 4, false),
+            Arguments.of("Object", object, object.indexOf("a;"), 1, "b", 4, true),
+            Arguments.of("Object Exceeded", object, object.indexOf("a;"), 1, "(a)", 4, false)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParseStackSize(String test, String input) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parse("source"));
+        var received = Assertions.assertDoesNotThrow(() -> new Parser(tokens).limitDepth(Integer.MAX_VALUE).parse("source", 256L << 20));
+        Assertions.assertEquals(1, ((Ast.Source) received).statements().size());
+    }
+
+    private static Stream<Arguments> testParseStackSize() {
+        return Stream.of(
+            Arguments.of("Group", "x = " + "(".repeat(100_000) + "x" + ")".repeat(100_000) + ";"),
+            Arguments.of("Block", "IF x DO ".repeat(100_000) + "x;" + " END".repeat(100_000))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLiteralPool(String test, String input) {
+        var source = Assertions.assertDoesNotThrow(() -> (Ast.Source) new Parser(new Lexer(input).lexBuffer()).parse("source"));
+        var values = source.statements().stream()
+            .map(stmt -> ((Ast.Expr.Literal) ((Ast.Stmt.Expression) stmt).expression()).value())
+            .toList();
+        Assertions.assertEquals(values.get(0), values.get(1));
+        Assertions.assertSame(values.get(0), values.get(1));
+        var arena = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(input).lexBuffer()).parseArena());
+        Assertions.assertEquals(source, arena.toAst());
+    }
+
+    private static Stream<Arguments> testLiteralPool() {
+        return Stream.of(
+            Arguments.of("Small Integer", "1; 1;"),
+            Arguments.of("Integer", "123456789; 123456789;"),
+            Arguments.of("Long", "123456789012345678; 123456789012345678;"),
+            Arguments.of("Big Integer", "123456789012345678901234567890; 123456789012345678901234567890;"),
+            Arguments.of("Negative Integer", "-5; -5;"),
+            Arguments.of("Decimal", "1.50; 1.50;"),
+            Arguments.of("Character", "'\u00E9'; '\u00E9';"),
+            Arguments.of("String", "\"string\\n\"; \"string\\n\";")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testAstInterner(String test, String input) {
+        var source = Assertions.assertDoesNotThrow(() -> (Ast.Source) new Parser(new Lexer(input).lexBuffer()).parse("source"));
+        var copy = Assertions.assertDoesNotThrow(() -> (Ast.Source) new Parser(new Lexer(input).lexBuffer()).parse("source"));
+        var interner = new AstInterner();
+        var canonical = interner.intern(source);
+        Assertions.assertEquals(source, canonical);
+        Assertions.assertSame(canonical, interner.intern(copy));
+        Assertions.assertSame(canonical, interner.intern(canonical));
+        Assertions.assertSame(canonical.statements().get(0), canonical.statements().get(1));
+        Assertions.assertEquals(interner.hash(canonical), new AstInterner().hash(copy));
+        Assertions.assertTrue(interner.equivalence().equivalent(source.statements().get(0), copy.statements().get(1)));
+        Assertions.assertEquals(interner.hash(canonical), interner.equivalence().hash(copy));
+    }
+
+    private static Stream<Arguments> testAstInterner() {
+        return Stream.of(
+            Arguments.of("Expression", "x + 1; x + 1;"),
+            Arguments.of("Call", "f(a.b, 1.0, \"s\"); f(a.b, 1.0, \"s\");"),
+            Arguments.of("Method", "a.m(b) = nil; a.m(b) = nil;"),
+            Arguments.of("Let", "LET x = -1; LET x = -1;"),
+            Arguments.of("Def", "DEF f(x, y) DO RETURN x; END DEF f(x, y) DO RETURN x; END"),
+            Arguments.of("If", "IF c DO f(); ELSE g(); END IF c DO f(); ELSE g(); END"),
+            Arguments.of("For", "FOR i IN list DO print(i); END FOR i IN list DO print(i); END"),
+            Arguments.of("Object", "LET o = OBJECT DO LET x = 1; DEF m() DO END END; LET o = OBJECT DO LET x = 1; DEF m() DO END END;")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testAstWalker(String test, String input, String skip, String stop, List<String> expected) {
+        var source = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(input).lexBuffer()).parse("source"));
+        var recursive = new Recorder(skip, stop, new ArrayList<>());
+        var all = new Recorder("", "", new ArrayList<>());
+        new AstWalker(recursive, all).walk(source);
+        Assertions.assertEquals(expected, recursive.events());
+        var iterative = new Recorder(skip, stop, new ArrayList<>());
+        var walker = new AstWalker(iterative);
+        Assertions.assertEquals(stop.isEmpty(), walker.walkIterative(source));
+        Assertions.assertEquals(expected, iterative.events());
+        var separate = new Recorder("", "", new ArrayList<>());
+        new AstWalker(separate).walk(source);
+        Assertions.assertEquals(separate.events(), all.events());
+    }
+
+    private static Stream<Arguments> testAstWalker() {
+        return Stream.of(
+            Arguments.of("Expression", "f(x) + 1;", "", "",
+                List.of("+Source", "+Expression", "+Binary", "+Function", "+Variable", "-Variable", "-Function", "+Literal", "-Literal", "-Binary", "-Expression", "-Source")
+            ),
+            Arguments.of("If", "IF c DO a; ELSE b; END", "", "",
+                List.of("+Source", "+If", "+Variable", "-Variable", "+Expression", "+Variable", "-Variable", "-Expression", "+Expression", "+Variable", "-Variable", "-Expression", "-If", "-Source")
+            ),
+            Arguments.of("Object", "LET o = OBJECT DO LET x; DEF m() DO RETURN; END END;", "", "",
+                List.of("+Source", "+Let", "+ObjectExpr", "+Let", "-Let", "+Def", "+Return", "-Return", "-Def", "-ObjectExpr", "-Let", "-Source")
+            ),
+            Arguments.of("Skip", "x = f(y); z;", "Assignment", "",
+                List.of("+Source", "+Assignment", "-Assignment", "+Expression", "+Variable", "-Variable", "-Expression", "-Source")
+            ),
+            Arguments.of("Stop", "x = f(y); z;", "", "Function",
+                List.of("+Source", "+Assignment", "+Variable", "-Variable", "+Function")
+            )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testAstWalkerDepth(String test, int depth) {
+        Ast.Expr expr = new Ast.Expr.Variable("x");
+        for (int i = 0; i < depth; i++) {
+            expr = new Ast.Expr.Group(expr);
+        }
+        var counter = new Recorder("", "", new ArrayList<>());
+        Assertions.assertTrue(new AstWalker(counter).walkIterative(new Ast.Stmt.Expression(expr)));
+        Assertions.assertEquals(2 * (depth + 2), counter.events().size());
+    }
+
+    private static Stream<Arguments> testAstWalkerDepth() {
+        return Stream.of(
+            Arguments.of("Shallow", 1),
+            Arguments.of("Deep", 1_000_000)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testAstPrinter(String test, String input, String expected) {
+        var ast = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(input).lexBuffer()).parse("source"));
+        Assertions.assertEquals(expected, AstPrinter.print(ast));
+    }
+
+    private static Stream<Arguments> testAstPrinter() {
+        return Stream.of(
+            Arguments.of("Empty", "", """
+                Source[
+                    statements=[]
+                ]"""
+            ),
+            Arguments.of("Let", "LET x; LET y = f(1, \"s\");", """
+                Source[
+                    statements=[
+                        Let[name=x, value=Optional.empty],
+                        Let[
+                            name=y,
+                            value=Optional[
+                                Function[
+                                    name=f,
+                                    arguments=[
+                                        Literal[value=1, class=BigInteger],
+                                        Literal[value=s, class=String]
+                                    ]
+                                ]
+                            ]
+                        ]
+                    ]
+                ]"""
+            ),
+            Arguments.of("Bracketed Strings", "f(\"a[b\", \"x], y=z\");", """
+                Source[
+                    statements=[
+                        Expression[
+                            expression=Function[
+                                name=f,
+                                arguments=[
+                                    Literal[value=a[b, class=String],
+                                    Literal[value=x], y=z, class=String]
+                                ]
+                            ]
+                        ]
+                    ]
+                ]"""
+            ),
+            Arguments.of("Def", "DEF f(a, b) DO RETURN; END", """
+                Source[
+                    statements=[
+                        Def[
+                            name=f,
+                            parameters=[a, b],
+                            body=[
+                                Return[value=Optional.empty]
+                            ]
+                        ]
+                    ]
+                ]"""
+            ),
+            Arguments.of("Object", "OBJECT DO LET x; END.x = -1.5;", """
+                Source[
+                    statements=[
+                        Assignment[
+                            expression=Property[
+                                receiver=ObjectExpr[
+                                    name=Optional.empty,
+                                    fields=[
+                                        Let[name=x, value=Optional.empty]
+                                    ],
+                                    methods=[]
+                                ],
+                                name=x
+                            ],
+                            value=Literal[value=-1.5, class=BigDecimal]
+                        ]
+                    ]
+                ]"""
+            )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testAstUnparser(String test, String input, String expected) {
+        var ast = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(input).lexBuffer()).parse("source"));
+        var source = AstUnparser.unparse(ast);
+        Assertions.assertEquals(expected, source);
+        var reparsed = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(source).lexBuffer()).parse("source"));
+        Assertions.assertEquals(ast, reparsed);
+    }
+
+    private static Stream<Arguments> testAstUnparser() {
+        return Stream.of(
+            Arguments.of("Expressions", "x=(1 + 2)*f(a.b,c.m()) AND y<-1.50;", """
+                x = (1 + 2) * f(a.b, c.m()) AND y < -1.50;
+                """
+            ),
+            Arguments.of("Literals", "LET c = '\\''; LET s = \"a\\\"b\\\\c\\n\"; RETURN NIL;", """
+                LET c = '\\'';
+                LET s = "a\\"b\\\\c\\n";
+                RETURN NIL;
+                """
+            ),
+            Arguments.of("Blocks", "DEF f(a, b) DO IF a DO RETURN b; ELSE FOR i IN b DO a = i; END END END", """
+                DEF f(a, b) DO
+                    IF a DO
+                        RETURN b;
+                    ELSE
+                        FOR i IN b DO
+                            a = i;
+                        END
+                    END
+                END
+                """
+            ),
+            Arguments.of("Return If", "RETURN IF x;", """
+                IF x DO
+                    RETURN;
+                END
+                """
+            ),
+            Arguments.of("Object", "LET o = OBJECT DO DEF m() DO END LET x = 1; END;", """
+                LET o = OBJECT DO
+                    LET x = 1;
+                    DEF m() DO
+                    END
+                END;
+                """
+            )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testAstUnparserBuilt(String test, Ast.Expr input, String expected, Ast.Expr reparsed) {
+        var source = AstUnparser.unparse(input);
+        Assertions.assertEquals(expected, source);
+        Assertions.assertEquals(reparsed, Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(source).lexBuffer()).parse("expr")));
+    }
+
+    private static Stream<Arguments> testAstUnparserBuilt() {
+        var a = new Ast.Expr.Variable("a");
+        var b = new Ast.Expr.Variable("b");
+        var c = new Ast.Expr.Variable("c");
+        var sum = new Ast.Expr.Binary("+", a, b);
+        return Stream.of(
+            Arguments.of("Lower Precedence Left", new Ast.Expr.Binary("*", sum, c), "(a + b) * c",
+                new Ast.Expr.Binary("*", new Ast.Expr.Group(sum), c)),
+            Arguments.of("Same Precedence Right", new Ast.Expr.Binary("-", a, new Ast.Expr.Binary("-", b, c)), "a - (b - c)",
+                new Ast.Expr.Binary("-", a, new Ast.Expr.Group(new Ast.Expr.Binary("-", b, c)))),
+            Arguments.of("Same Precedence Left", new Ast.Expr.Binary("-", new Ast.Expr.Binary("-", a, b), c), "a - b - c",
+                new Ast.Expr.Binary("-", new Ast.Expr.Binary("-", a, b), c)),
+            Arguments.of("Property Receiver", new Ast.Expr.Property(sum, "x"), "(a + b).x",
+                new Ast.Expr.Property(new Ast.Expr.Group(sum), "x")),
+            Arguments.of("Method Receiver", new Ast.Expr.Method(sum, "m", List.of(c)), "(a + b).m(c)",
+                new Ast.Expr.Method(new Ast.Expr.Group(sum), "m", List.of(c))),
+            Arguments.of("Decimal Exponent", new Ast.Expr.Literal(new BigDecimal("1.0e10")), "0.10E11",
+                new Ast.Expr.Literal(new BigDecimal("1.0e10"))),
+            Arguments.of("Decimal Integral", new Ast.Expr.Literal(new BigDecimal("-7")), "-0.7E1",
+                new Ast.Expr.Literal(new BigDecimal("-7")))
+        );
+    }
+
+    /**
+     * Records entering (+) and exiting (-) nodes, skipping the children of
+     * and stopping at nodes of the given types.
+     */
+    private record Recorder(String skip, String stop, List<String> events) implements AstWalker.Visitor {
+
+        @Override
+        public AstWalker.Action enter(Ast node) {
+            var type = node.getClass().getSimpleName();
+            events.add("+" + type);
+            return type.equals(stop) ? AstWalker.Action.STOP : type.equals(skip) ? AstWalker.Action.SKIP : AstWalker.Action.CONTINUE;
+        }
+
+        @Override
+        public AstWalker.Action exit(Ast node) {
+            events.add("-" + node.getClass().getSimpleName());
+            return AstWalker.Action.CONTINUE;
+        }
+
+    }
+
     interface ParserMethod<T extends Ast> {
         T invoke(Parser parser) throws ParseException;
     }
@@ -661,10 +1406,24 @@ final class ParserTests {
             case Ast ast -> {
                 var received = Assertions.assertDoesNotThrow(() -> parser.parse(rule));
                 Assertions.assertEquals(ast, received);
+                //the arena is built by the same grammar, and a statement is a source on its own
+                var source = switch (ast) {
+                    case Ast.Source root -> root;
+                    case Ast.Stmt stmt -> new Ast.Source(List.of(stmt));
+                    case Ast.Expr expr -> null;
+                };
+                if (source != null) {
+                    var arena = Assertions.assertDoesNotThrow(() -> new Parser(tokens).parseArena());
+                    Assertions.assertEquals(source, arena.toAst());
+                }
             }
             case ParseException e -> {
                 var received = Assertions.assertThrows(ParseException.class, () -> parser.parse(rule));
                 Assertions.assertEquals(e.getToken(), received.getToken());
+                if (rule.equals("source")) {
+                    var arena = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseArena());
+                    Assertions.assertEquals(e.getToken(), arena.getToken());
+                }
             }
             default -> throw new AssertionError(input);
         }